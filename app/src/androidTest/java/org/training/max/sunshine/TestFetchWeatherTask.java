@@ -15,86 +15,152 @@
  */
 package org.training.max.sunshine;
 
+import android.annotation.TargetApi;
+import android.database.Cursor;
 import android.test.AndroidTestCase;
 
+import org.training.max.sunshine.data.WeatherContract;
+import org.training.max.sunshine.net.CircuitBreaker;
+import org.training.max.sunshine.net.ForecastClient;
+import org.training.max.sunshine.net.LocalForecastServer;
+import org.training.max.sunshine.net.LocalServerTransport;
+import org.training.max.sunshine.net.OkHttpForecastTransport;
+import org.training.max.sunshine.net.RetryPolicy;
+import org.training.max.sunshine.net.TokenBucketRateLimiter;
+import org.training.max.sunshine.sync.ForecastSync;
+import org.training.max.sunshine.util.BuildUtils;
+
+import java.io.IOException;
+
 public class TestFetchWeatherTask extends AndroidTestCase{
     static final String ADD_LOCATION_SETTING = "Sunnydale, CA";
     static final String ADD_LOCATION_CITY = "Sunnydale";
     static final double ADD_LOCATION_LAT = 34.425833;
     static final double ADD_LOCATION_LON = -119.714167;
 
+    private LocalForecastServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new LocalForecastServer();
+        mServer.start();
+        ForecastClient.setInstance(new ForecastClient(getContext(), 64 * 1024,
+                new LocalServerTransport(new OkHttpForecastTransport(1, 60), mServer.getPort()),
+                new RetryPolicy(3, 10, 100), new CircuitBreaker(5, 1000),
+                new TokenBucketRateLimiter(10, 6000)));
+        // Start without responses of earlier runs, cached under the same OWM URL.
+        ForecastClient.getInstance(getContext()).forgetValidators(
+                BuildUtils.buildOpenWeatherMapUrlString(ADD_LOCATION_SETTING));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        String url = BuildUtils.buildOpenWeatherMapUrlString(ADD_LOCATION_SETTING);
+        ForecastClient.getInstance(getContext()).forgetValidators(url);
+        ForecastClient.setInstance(null);
+        mServer.shutdown();
+        getContext().getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{ADD_LOCATION_SETTING});
+        super.tearDown();
+    }
+
+    /*
+        The whole fetch, parse and store path against the local stand-in server.
+     */
+    @TargetApi(11)
+    public void testSyncFromLocalServer() throws IOException {
+        // The first request fails and is retried.
+        mServer.failNextRequests(1);
+        mServer.setLatencyMillis(20);
+
+        ForecastSync sync = new ForecastSync(getContext());
+        int changed = sync.sync(ADD_LOCATION_SETTING);
+        assertEquals("Error: all days of a new forecast should be changed", 14, changed);
+        assertEquals("Error: the failed request should have been retried",
+                2, mServer.getRequestCount());
+
+        Cursor weatherCursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(ADD_LOCATION_SETTING),
+                null, null, null, null);
+        assertNotNull(weatherCursor);
+        assertEquals("Error: stored rows don't match the forecast", 14, weatherCursor.getCount());
+        weatherCursor.close();
+    }
+
     /*
-        Students: uncomment testAddLocation after you have written the AddLocation function.
+        addLocation is used by the FetchWeatherTask through ForecastSync.
         This test will only run on API level 11 and higher because of a requirement in the
         content provider.
      */
-//    @TargetApi(11)
-//    public void testAddLocation() {
-//        // start from a clean state
-//        getContext().getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI,
-//                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-//                new String[]{ADD_LOCATION_SETTING});
-//
-//        FetchWeatherTask fwt = new FetchWeatherTask(getContext(), null);
-//        long locationId = fwt.addLocation(ADD_LOCATION_SETTING, ADD_LOCATION_CITY,
-//                ADD_LOCATION_LAT, ADD_LOCATION_LON);
-//
-//        // does addLocation return a valid record ID?
-//        assertFalse("Error: addLocation returned an invalid ID on insert",
-//                locationId == -1);
-//
-//        // test all this twice
-//        for ( int i = 0; i < 2; i++ ) {
-//
-//            // does the ID point to our location?
-//            Cursor locationCursor = getContext().getContentResolver().query(
-//                    WeatherContract.LocationEntry.CONTENT_URI,
-//                    new String[]{
-//                            WeatherContract.LocationEntry._ID,
-//                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
-//                            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
-//                            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-//                            WeatherContract.LocationEntry.COLUMN_COORD_LONG
-//                    },
-//                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-//                    new String[]{ADD_LOCATION_SETTING},
-//                    null);
-//
-//            // these match the indices of the projection
-//            if (locationCursor.moveToFirst()) {
-//                assertEquals("Error: the queried value of locationId does not match the returned value" +
-//                        "from addLocation", locationCursor.getLong(0), locationId);
-//                assertEquals("Error: the queried value of location setting is incorrect",
-//                        locationCursor.getString(1), ADD_LOCATION_SETTING);
-//                assertEquals("Error: the queried value of location city is incorrect",
-//                        locationCursor.getString(2), ADD_LOCATION_CITY);
-//                assertEquals("Error: the queried value of latitude is incorrect",
-//                        locationCursor.getDouble(3), ADD_LOCATION_LAT);
-//                assertEquals("Error: the queried value of longitude is incorrect",
-//                        locationCursor.getDouble(4), ADD_LOCATION_LON);
-//            } else {
-//                fail("Error: the id you used to query returned an empty cursor");
-//            }
-//
-//            // there should be no more records
-//            assertFalse("Error: there should be only one record returned from a location query",
-//                    locationCursor.moveToNext());
-//
-//            // add the location again
-//            long newLocationId = fwt.addLocation(ADD_LOCATION_SETTING, ADD_LOCATION_CITY,
-//                    ADD_LOCATION_LAT, ADD_LOCATION_LON);
-//
-//            assertEquals("Error: inserting a location again should return the same ID",
-//                    locationId, newLocationId);
-//        }
-//        // reset our state back to normal
-//        getContext().getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI,
-//                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-//                new String[]{ADD_LOCATION_SETTING});
-//
-//        // clean up the test so that other tests can use the content provider
-//        getContext().getContentResolver().
-//                acquireContentProviderClient(WeatherContract.LocationEntry.CONTENT_URI).
-//                getLocalContentProvider().shutdown();
-//    }
+    @TargetApi(11)
+    public void testAddLocation() {
+        // start from a clean state
+        getContext().getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{ADD_LOCATION_SETTING});
+
+        ForecastSync fwt = new ForecastSync(getContext());
+        long locationId = fwt.addLocation(ADD_LOCATION_SETTING, ADD_LOCATION_CITY,
+                ADD_LOCATION_LAT, ADD_LOCATION_LON);
+
+        // does addLocation return a valid record ID?
+        assertFalse("Error: addLocation returned an invalid ID on insert",
+                locationId == -1);
+
+        // test all this twice
+        for ( int i = 0; i < 2; i++ ) {
+
+            // does the ID point to our location?
+            Cursor locationCursor = getContext().getContentResolver().query(
+                    WeatherContract.LocationEntry.CONTENT_URI,
+                    new String[]{
+                            WeatherContract.LocationEntry._ID,
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+                    },
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                    new String[]{ADD_LOCATION_SETTING},
+                    null);
+
+            // these match the indices of the projection
+            if (locationCursor.moveToFirst()) {
+                assertEquals("Error: the queried value of locationId does not match the returned value" +
+                        "from addLocation", locationCursor.getLong(0), locationId);
+                assertEquals("Error: the queried value of location setting is incorrect",
+                        locationCursor.getString(1), ADD_LOCATION_SETTING);
+                assertEquals("Error: the queried value of location city is incorrect",
+                        locationCursor.getString(2), ADD_LOCATION_CITY);
+                assertEquals("Error: the queried value of latitude is incorrect",
+                        locationCursor.getDouble(3), ADD_LOCATION_LAT);
+                assertEquals("Error: the queried value of longitude is incorrect",
+                        locationCursor.getDouble(4), ADD_LOCATION_LON);
+            } else {
+                fail("Error: the id you used to query returned an empty cursor");
+            }
+
+            // there should be no more records
+            assertFalse("Error: there should be only one record returned from a location query",
+                    locationCursor.moveToNext());
+
+            // add the location again
+            long newLocationId = fwt.addLocation(ADD_LOCATION_SETTING, ADD_LOCATION_CITY,
+                    ADD_LOCATION_LAT, ADD_LOCATION_LON);
+
+            assertEquals("Error: inserting a location again should return the same ID",
+                    locationId, newLocationId);
+        }
+        // reset our state back to normal
+        getContext().getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{ADD_LOCATION_SETTING});
+
+        // clean up the test so that other tests can use the content provider
+        getContext().getContentResolver().
+                acquireContentProviderClient(WeatherContract.LocationEntry.CONTENT_URI).
+                getLocalContentProvider().shutdown();
+    }
 }
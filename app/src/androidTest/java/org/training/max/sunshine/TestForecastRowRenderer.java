@@ -0,0 +1,39 @@
+package org.training.max.sunshine;
+
+import android.test.AndroidTestCase;
+
+import org.training.max.sunshine.util.DayLabelFormatter;
+
+public class TestForecastRowRenderer extends AndroidTestCase {
+
+    private static final long TEST_ROW_ID = 42;
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastRowRenderer.getInstance().clear();
+        super.tearDown();
+    }
+
+    public void testRenderAndCache() {
+        ForecastRowRenderer renderer = ForecastRowRenderer.getInstance();
+        long date = System.currentTimeMillis();
+
+        String metric = renderer.render(TEST_ROW_ID, date, "Clear", 21.4, 11.6,
+                ForecastSettings.Units.METRIC);
+        assertEquals("Error: wrong row text",
+                DayLabelFormatter.getInstance().format(date) + " - Clear - 21/12 C", metric);
+        assertSame("Error: unchanged row should come from the cache", metric,
+                renderer.render(TEST_ROW_ID, date, "Clear", 21.4, 11.6,
+                        ForecastSettings.Units.METRIC));
+
+        assertTrue("Error: unit switch wasn't rendered", renderer.render(TEST_ROW_ID, date,
+                "Clear", 21.4, 11.6, ForecastSettings.Units.IMPERIAL).endsWith(" - 71/53 F"));
+        assertTrue("Error: changed row wasn't rendered again", renderer.render(TEST_ROW_ID, date,
+                "Rain", 21.4, 11.6, ForecastSettings.Units.IMPERIAL).contains(" - Rain - "));
+    }
+
+    public void testHighLowsOutsideTable() {
+        assertEquals("Error: wrong high/lows", "-300/-301 C", ForecastRowRenderer.formatHighLows(
+                -300, -301, ForecastSettings.Units.METRIC));
+    }
+}
@@ -55,6 +55,7 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ConditionEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(this.mContext).getWritableDatabase();
@@ -101,6 +102,19 @@ public class TestDb extends AndroidTestCase {
         // entry columns
         assertTrue("Error: The database doesn't contain all of the required location entry columns",
                 locationColumnHashSet.isEmpty());
+        c.close();
+
+        // The weather rows keep to numbers, descriptions are in the condition table.
+        c = db.rawQuery("PRAGMA table_info(" + WeatherContract.WeatherEntry.TABLE_NAME + ")",
+                null);
+        int typeIndex = c.getColumnIndex("type");
+        columnNameIndex = c.getColumnIndex("name");
+        while (c.moveToNext()) {
+            String type = c.getString(typeIndex);
+            assertTrue("Error: Weather column " + c.getString(columnNameIndex) + " is " + type,
+                    "INTEGER".equals(type) || "REAL".equals(type));
+        }
+        c.close();
         db.close();
     }
 
@@ -139,13 +153,26 @@ public class TestDb extends AndroidTestCase {
         // (you can use the createWeatherValues TestUtilities function if you wish)
         ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
 
+        // The description goes to the condition table, the rest to the weather table.
+        ContentValues conditionValues = new ContentValues();
+        conditionValues.put(WeatherContract.ConditionEntry.COLUMN_WEATHER_ID,
+                weatherValues.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        conditionValues.put(WeatherContract.ConditionEntry.COLUMN_SHORT_DESC,
+                weatherValues.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        assertTrue(db.insert(WeatherContract.ConditionEntry.TABLE_NAME, null, conditionValues) != -1);
+
+        ContentValues weatherRowValues = new ContentValues(weatherValues);
+        weatherRowValues.remove(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+
         // Insert ContentValues into database and get a row ID back
-        long weatherRowId = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+        long weatherRowId = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherRowValues);
         assertTrue(weatherRowId != -1);
 
-        // Query the database and receive a Cursor back
+        // Query the database and receive a Cursor back, with the description joined in
         Cursor cursor = db.query(
-                WeatherContract.WeatherEntry.TABLE_NAME,
+                WeatherContract.WeatherEntry.TABLE_NAME + " JOIN "
+                        + WeatherContract.ConditionEntry.TABLE_NAME + " USING ("
+                        + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ")",
                 null,
                 null,
                 null,
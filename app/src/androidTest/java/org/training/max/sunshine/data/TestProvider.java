@@ -15,6 +15,9 @@
  */
 package org.training.max.sunshine.data;
 
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -22,6 +25,9 @@ import android.test.AndroidTestCase;
 
 import org.training.max.sunshine.data.WeatherContract.LocationEntry;
 import org.training.max.sunshine.data.WeatherContract.WeatherEntry;
+import org.training.max.sunshine.sync.ForecastBatch;
+
+import java.util.TimeZone;
 
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
@@ -86,6 +92,7 @@ public class TestProvider extends AndroidTestCase {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
         db.delete(WeatherEntry.TABLE_NAME, null, null);
+        db.delete(WeatherContract.ConditionEntry.TABLE_NAME, null, null);
         db.delete(LocationEntry.TABLE_NAME, null, null);
         db.close();
     }
@@ -452,6 +459,172 @@ public class TestProvider extends AndroidTestCase {
         return returnContentValues;
     }
 
+    /*
+        The description of every weather row is written through the provider, but it is stored
+        once per weather id and joined back in on read.
+     */
+    public void testConditionStoredOnce() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        db.close();
+        assertTrue(locationRowId != -1);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                bulkInsertContentValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testConditionStoredOnce. Error validating "
+                    + "WeatherEntry " + i, cursor, bulkInsertContentValues[i]);
+        }
+        cursor.close();
+
+        db = dbHelper.getReadableDatabase();
+        cursor = db.query(WeatherContract.ConditionEntry.TABLE_NAME, null, null, null, null, null,
+                null);
+        assertEquals("Error: The description should be stored once", 1, cursor.getCount());
+        cursor.close();
+        db.close();
+    }
+
+    /*
+        The sync hands its batch straight to the provider, whose values are bound from it.
+        Upserting the batch again only writes the day which changed, in place.
+     */
+    public void testBatchUpsert() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        db.close();
+        assertTrue(locationRowId != -1);
+
+        ForecastBatch batch = new ForecastBatch(TestUtilities.TEST_LOCATION);
+        batch.setLocationId(locationRowId);
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+            batch.addDay(i % 2 == 0 ? 800 : 500, i % 2 == 0 ? "Clear" : "Rain", 20.5f + i, 10.25f,
+                    1013.5f, 60 + i, 3.5f, 270f);
+        }
+        batch.setDatesFrom(TestUtilities.TEST_DATE, TimeZone.getDefault());
+
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherEntry.CONTENT_URI);
+        long[] firstIds = new long[BULK_INSERT_RECORDS_TO_INSERT];
+        try {
+            WeatherProvider provider = (WeatherProvider) client.getLocalContentProvider();
+            assertEquals("Error: every new day should be reported as changed",
+                    BULK_INSERT_RECORDS_TO_INSERT, provider.upsert(batch).length);
+            readStoredDays(batch, firstIds);
+
+            assertEquals("Error: an equal forecast shouldn't change the store",
+                    0, provider.upsert(batch).length);
+
+            ForecastBatch changedBatch = new ForecastBatch(TestUtilities.TEST_LOCATION);
+            changedBatch.setLocationId(locationRowId);
+            for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+                changedBatch.addDay(batch.getWeatherId(i), batch.getDescription(i),
+                        i == 3 ? 30f : batch.getHigh(i), batch.getLow(i), batch.getPressure(i),
+                        batch.getHumidity(i), batch.getWindSpeed(i), batch.getWindDirection(i));
+            }
+            changedBatch.setDatesFrom(TestUtilities.TEST_DATE, TimeZone.getDefault());
+            long[] changedDates = provider.upsert(changedBatch);
+            assertEquals(1, changedDates.length);
+            assertEquals(batch.getDate(3), changedDates[0]);
+
+            long[] ids = new long[BULK_INSERT_RECORDS_TO_INSERT];
+            readStoredDays(changedBatch, ids);
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals("Error: an upsert should keep the row ID", firstIds[i], ids[i]);
+            }
+        } finally {
+            client.release();
+        }
+    }
+
+    /*
+        Inserting a stored day again, whole or with only some of its columns, updates it in
+        place, so it keeps its row ID.
+     */
+    public void testInsertKeepsRowId() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        db.close();
+        assertTrue(locationRowId != -1);
+
+        ContentResolver resolver = mContext.getContentResolver();
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        long rowId = ContentUris.parseId(resolver.insert(WeatherEntry.CONTENT_URI,
+                new ContentValues(weatherValues)));
+        assertTrue(rowId != -1);
+
+        ContentValues changedValues = new ContentValues(weatherValues);
+        changedValues.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        assertEquals("Error: inserting a stored day should keep its row ID", rowId,
+                ContentUris.parseId(resolver.insert(WeatherEntry.CONTENT_URI, changedValues)));
+
+        ContentValues partialValues = new ContentValues();
+        partialValues.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+        partialValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE);
+        partialValues.put(WeatherEntry.COLUMN_HUMIDITY, 99.5);
+        assertEquals("Error: a partial row should update the stored day", 1,
+                resolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                        new ContentValues[]{new ContentValues(partialValues)}));
+        assertEquals("Error: an equal partial row shouldn't change the store", 0,
+                resolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                        new ContentValues[]{new ContentValues(partialValues)}));
+
+        Cursor cursor = resolver.query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID, WeatherEntry.COLUMN_MAX_TEMP,
+                        WeatherEntry.COLUMN_HUMIDITY, WeatherEntry.COLUMN_PRESSURE},
+                null,
+                null,
+                null
+        );
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: an upsert should keep the row ID", rowId, cursor.getLong(0));
+        assertEquals(80.0, cursor.getDouble(1));
+        assertEquals(99.5, cursor.getDouble(2));
+        assertEquals("Error: a partial row should keep the other columns", 1.3, cursor.getDouble(3));
+        cursor.close();
+    }
+
+    private void readStoredDays(ForecastBatch batch, long[] ids) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID, WeatherEntry.COLUMN_DATE,
+                        WeatherEntry.COLUMN_SHORT_DESC, WeatherEntry.COLUMN_MAX_TEMP,
+                        WeatherEntry.COLUMN_HUMIDITY},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(batch.size(), cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+            assertEquals(batch.getDate(i), cursor.getLong(1));
+            assertEquals(batch.getDescription(i), cursor.getString(2));
+            assertEquals(batch.getHigh(i), cursor.getFloat(3));
+            assertEquals(batch.getHumidity(i), cursor.getFloat(4));
+        }
+        cursor.close();
+    }
+
     // Student: Uncomment this test after you have completed writing the BulkInsert functionality
     // in your provider.  Note that this test will work with the built-in (default) provider
     // implementation, which just inserts records one-at-a-time, so really do implement the
@@ -15,6 +15,7 @@
  */
 package org.training.max.sunshine.data;
 
+import android.net.Uri;
 import android.test.AndroidTestCase;
 
 /*
@@ -30,15 +31,15 @@ public class TestWeatherContract extends AndroidTestCase {
     /*
         Students: Uncomment this out to test your weather location function.
      */
-//    public void testBuildWeatherLocation() {
-//        Uri locationUri = WeatherContract.WeatherEntry.buildWeatherLocation(TEST_WEATHER_LOCATION);
-//        assertNotNull("Error: Null Uri returned.  You must fill-in buildWeatherLocation in " +
-//                        "WeatherContract.",
-//                locationUri);
-//        assertEquals("Error: Weather location not properly appended to the end of the Uri",
-//                TEST_WEATHER_LOCATION, locationUri.getLastPathSegment());
-//        assertEquals("Error: Weather location Uri doesn't match our expected result",
-//                locationUri.toString(),
-//                "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
-//    }
+    public void testBuildWeatherLocation() {
+        Uri locationUri = WeatherContract.WeatherEntry.buildWeatherLocation(TEST_WEATHER_LOCATION);
+        assertNotNull("Error: Null Uri returned.  You must fill-in buildWeatherLocation in " +
+                        "WeatherContract.",
+                locationUri);
+        assertEquals("Error: Weather location not properly appended to the end of the Uri",
+                TEST_WEATHER_LOCATION, locationUri.getLastPathSegment());
+        assertEquals("Error: Weather location Uri doesn't match our expected result",
+                locationUri.toString(),
+                "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
+    }
 }
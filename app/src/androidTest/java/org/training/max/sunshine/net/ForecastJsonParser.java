@@ -0,0 +1,229 @@
+package org.training.max.sunshine.net;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Streaming parser for the OpenWeatherMap daily forecast response.
+ * <p>
+ * The response is pulled token by token straight off the input stream and every day is handed
+ * to a {@link ForecastHandler} as soon as it has been decoded. Neither the full response body
+ * nor a JSON object tree is ever built, so the memory cost is constant per row.
+ * <p>
+ * The app decodes with {@link ForecastByteDecoder}, which emits the same events without going
+ * through a Reader. This parser stays with the tests as the reference it is checked and
+ * benchmarked against.
+ */
+public final class ForecastJsonParser {
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information. Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * We can't instantiate the utility class.
+     */
+    private ForecastJsonParser() {
+        // This constructor is intentionally empty. It is utility class which shouldn't be instantiated.
+    }
+
+    /**
+     * Parse the forecast response and emit its rows to the handler while reading.
+     *
+     * @param inputStream response body, it isn't closed here
+     * @param handler     receiver of the decoded city and days
+     * @return count of the days which were emitted
+     * @throws IOException if the stream can't be read or doesn't contain a valid forecast
+     */
+    public static int parse(InputStream inputStream, ForecastHandler handler) throws IOException {
+        return parse(inputStream, handler, CancellationToken.NONE);
+    }
+
+    /**
+     * Parse the forecast response and emit its rows to the handler while reading.
+     * The token is checked before every day.
+     *
+     * @param inputStream response body, it isn't closed here
+     * @param handler     receiver of the decoded city and days
+     * @param token       cancellation of the refresh
+     * @return count of the days which were emitted
+     * @throws CancelledException if the refresh was cancelled or its deadline passed
+     * @throws IOException if the stream can't be read or doesn't contain a valid forecast
+     */
+    public static int parse(InputStream inputStream, ForecastHandler handler,
+                            CancellationToken token) throws IOException {
+        // OWM always answers in UTF-8. Malformed input is reported rather than silently replaced.
+        CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, decoder));
+        int dayCount = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY.equals(name)) {
+                readCity(reader, handler);
+            } else if (OWM_LIST.equals(name)) {
+                dayCount = readList(reader, handler, token);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return dayCount;
+    }
+
+    private static void readCity(JsonReader reader, ForecastHandler handler) throws IOException {
+        String cityName = null;
+        double lat = 0;
+        double lon = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        handler.onCity(cityName, lat, lon);
+    }
+
+    private static int readList(JsonReader reader, ForecastHandler handler,
+                                CancellationToken token) throws IOException {
+        final DayForecast day = new DayForecast();
+        int dayIndex = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            token.throwIfCancelled();
+            day.reset(dayIndex);
+            readDay(reader, day);
+            if (day.description == null) {
+                throw new IOException("Forecast day " + dayIndex + " has no weather description");
+            }
+            handler.onDay(day);
+            dayIndex++;
+        }
+        reader.endArray();
+
+        return dayIndex;
+    }
+
+    private static void readDay(JsonReader reader, DayForecast day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                day.pressure = reader.nextDouble();
+            } else if (OWM_HUMIDITY.equals(name)) {
+                day.humidity = reader.nextInt();
+            } else if (OWM_WINDSPEED.equals(name)) {
+                day.windSpeed = reader.nextDouble();
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                day.windDirection = reader.nextDouble();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                readTemperature(reader, day);
+            } else if (OWM_WEATHER.equals(name)) {
+                readWeather(reader, day);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readTemperature(JsonReader reader, DayForecast day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MAX.equals(name)) {
+                day.high = reader.nextDouble();
+            } else if (OWM_MIN.equals(name)) {
+                day.low = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Description is in a child array called "weather", which is 1 element long.
+     * That element also contains a weather code.
+     */
+    private static void readWeather(JsonReader reader, DayForecast day) throws IOException {
+        reader.beginArray();
+        boolean first = true;
+        while (reader.hasNext()) {
+            if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_DESCRIPTION.equals(name)) {
+                    day.description = reader.nextString();
+                } else if (OWM_WEATHER_ID.equals(name)) {
+                    day.weatherId = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+}
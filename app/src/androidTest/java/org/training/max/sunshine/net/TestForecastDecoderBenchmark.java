@@ -0,0 +1,207 @@
+package org.training.max.sunshine.net;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks that {@link ForecastByteDecoder} decodes exactly what {@link ForecastJsonParser} and
+ * the old JSONObject path do, and compares their speed on forecasts as served by OWM. The
+ * timings are logged, only the byte decoder beating the JSONObject path is asserted, as
+ * devices differ too much for anything closer.
+ */
+public class TestForecastDecoderBenchmark extends AndroidTestCase {
+
+    private static final String LOG_TAG = TestForecastDecoderBenchmark.class.getSimpleName();
+
+    private static final int WARM_UP_ITERATIONS = 50;
+    private static final int ITERATIONS = 500;
+
+    // The decoders which are timed.
+    private static final int JSON_OBJECT = 0;
+    private static final int JSON_READER = 1;
+    private static final int BYTE_DECODER = 2;
+
+    /**
+     * Collects the events of a parser as text, so two parsers can be compared.
+     */
+    private static class RecordingHandler implements ForecastHandler {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            events.add(cityName + " " + lat + " " + lon);
+        }
+
+        @Override
+        public void onDay(DayForecast day) {
+            events.add(day.index + " " + day.pressure + " " + day.humidity + " " + day.windSpeed
+                    + " " + day.windDirection + " " + day.high + " " + day.low + " "
+                    + day.description + " " + day.weatherId);
+        }
+    }
+
+    private static final ForecastHandler NO_OP_HANDLER =
+            new ForecastHandler() {
+                @Override
+                public void onCity(String cityName, double lat, double lon) {
+                }
+
+                @Override
+                public void onDay(DayForecast day) {
+                }
+            };
+
+    public void testDecodersAgree() throws IOException {
+        String[] payloads = {
+                LocalForecastServer.generateForecast(1),
+                LocalForecastServer.generateForecast(16),
+                "{\"list\":[{\"temp\":{\"max\":2.5E1,\"min\":-0.25},\"pressure\":\"1013.25\","
+                        + "\"weather\":[{\"main\":\"Caf\\u00e9 \\\"Pluie\\\"\",\"id\":501},{}],"
+                        + "\"humidity\":80,\"rain\":null,\"snow\":[true,false]}],"
+                        + "\"city\":{\"name\":\"São Paulo\",\"coord\":{\"lat\":-23.55,\"lon\":-46.63}}}"
+        };
+        for (String payload : payloads) {
+            RecordingHandler expected = new RecordingHandler();
+            ForecastJsonParser.parse(stream(payload), expected, CancellationToken.NONE);
+            RecordingHandler actual = new RecordingHandler();
+            ForecastByteDecoder.parse(stream(payload), actual, CancellationToken.NONE);
+            assertEquals("Error: decoders disagree on " + payload, expected.events, actual.events);
+        }
+    }
+
+    public void testJsonObjectPathAgrees() throws IOException {
+        // The JSONObject path requires every member, so only full forecasts are compared.
+        for (int dayCount : new int[]{1, 16}) {
+            byte[] payload = LocalForecastServer.generateForecast(dayCount).getBytes("UTF-8");
+            RecordingHandler expected = new RecordingHandler();
+            assertEquals(dayCount, decodeWithJsonObject(new ByteArrayInputStream(payload), expected));
+            RecordingHandler actual = new RecordingHandler();
+            ForecastByteDecoder.parse(new ByteArrayInputStream(payload), actual,
+                    CancellationToken.NONE);
+            assertEquals("Error: decoders disagree on " + dayCount + " days",
+                    expected.events, actual.events);
+        }
+    }
+
+    public void testMalformedInputIsReported() {
+        byte[] invalidUtf8 = {'{', '"', 'c', 'i', 't', 'y', '"', ':', '{', '"', 'n', 'a', 'm', 'e',
+                '"', ':', '"', (byte) 0xff, '"', '}', '}'};
+        try {
+            ForecastByteDecoder.parse(new ByteArrayInputStream(invalidUtf8), NO_OP_HANDLER,
+                    CancellationToken.NONE);
+            fail("Error: malformed UTF-8 should be reported");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    public void testBenchmark() throws IOException {
+        for (int dayCount : new int[]{7, 16}) {
+            byte[] payload = LocalForecastServer.generateForecast(dayCount).getBytes("UTF-8");
+            long objectNanos = time(payload, JSON_OBJECT, dayCount);
+            long readerNanos = time(payload, JSON_READER, dayCount);
+            long byteNanos = time(payload, BYTE_DECODER, dayCount);
+            Log.i(LOG_TAG, String.format(Locale.US,
+                    "%d days, %d bytes: JSONObject %d us/op, JsonReader %d us/op, "
+                            + "byte decoder %d us/op (%.1fx, %.1fx)",
+                    dayCount, payload.length, objectNanos / 1000, readerNanos / 1000,
+                    byteNanos / 1000, objectNanos / (double) byteNanos,
+                    readerNanos / (double) byteNanos));
+            assertTrue("Error: the byte decoder is slower than the JSONObject path for "
+                    + dayCount + " days", byteNanos < objectNanos);
+        }
+    }
+
+    /**
+     * @return average time of a decode in nanoseconds
+     */
+    private static long time(byte[] payload, int decoder, int dayCount) throws IOException {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            assertEquals(dayCount, decode(payload, decoder));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decode(payload, decoder);
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private static int decode(byte[] payload, int decoder) throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(payload);
+        switch (decoder) {
+            case JSON_OBJECT:
+                return decodeWithJsonObject(inputStream, NO_OP_HANDLER);
+            case JSON_READER:
+                return ForecastJsonParser.parse(inputStream, NO_OP_HANDLER,
+                        CancellationToken.NONE);
+            default:
+                return ForecastByteDecoder.parse(inputStream, NO_OP_HANDLER,
+                        CancellationToken.NONE);
+        }
+    }
+
+    /**
+     * The decoding the sync did before the streaming decoders: the body is read line by line
+     * into a String which is parsed into a JSONObject tree, and the rows are taken from it.
+     *
+     * @return count of the days which were emitted
+     */
+    private static int decodeWithJsonObject(InputStream inputStream, ForecastHandler handler)
+            throws IOException {
+        StringBuffer buffer = new StringBuffer();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line).append('\n');
+        }
+
+        try {
+            JSONObject forecastJson = new JSONObject(buffer.toString());
+            JSONArray weatherArray = forecastJson.getJSONArray("list");
+
+            JSONObject cityJson = forecastJson.getJSONObject("city");
+            JSONObject cityCoord = cityJson.getJSONObject("coord");
+            handler.onCity(cityJson.getString("name"), cityCoord.getDouble("lat"),
+                    cityCoord.getDouble("lon"));
+
+            DayForecast day = new DayForecast();
+            for (int i = 0; i < weatherArray.length(); i++) {
+                JSONObject dayForecast = weatherArray.getJSONObject(i);
+                day.reset(i);
+                day.pressure = dayForecast.getDouble("pressure");
+                day.humidity = dayForecast.getInt("humidity");
+                day.windSpeed = dayForecast.getDouble("speed");
+                day.windDirection = dayForecast.getDouble("deg");
+
+                JSONObject weatherObject = dayForecast.getJSONArray("weather").getJSONObject(0);
+                day.description = weatherObject.getString("main");
+                day.weatherId = weatherObject.getInt("id");
+
+                JSONObject temperatureObject = dayForecast.getJSONObject("temp");
+                day.high = temperatureObject.getDouble("max");
+                day.low = temperatureObject.getDouble("min");
+                handler.onDay(day);
+            }
+            return weatherArray.length();
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static ByteArrayInputStream stream(String payload) throws IOException {
+        return new ByteArrayInputStream(payload.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,111 @@
+package org.training.max.sunshine.net;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TestForecastDiskCache extends AndroidTestCase {
+
+    private static final String TEST_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?q=94043&mode=json&units=metric&cnt=14";
+    private static final String TEST_URL_REORDERED =
+            "http://API.openweathermap.org/data/2.5/forecast/daily?cnt=14&units=metric&mode=json&q=94043";
+    private static final String TEST_BODY = "{\"city\":{\"name\":\"Mountain View\"},\"list\":[]}";
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "test-forecast-responses");
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    public void testPutAndGet() throws IOException {
+        ForecastDiskCache cache = new ForecastDiskCache(mDirectory, 64 * 1024);
+        long now = System.currentTimeMillis();
+        store(cache, TEST_URL, now, now + 60000, TEST_BODY);
+
+        ForecastDiskCache.Entry entry = cache.get(TEST_URL_REORDERED);
+        assertNotNull("Error: entry wasn't found by the normalized URL", entry);
+        assertTrue("Error: entry should be fresh", entry.isFresh(now));
+        assertEquals("Error: fetch time wasn't kept", now, entry.getFetchedAt());
+        assertEquals("Error: cached body doesn't match", TEST_BODY, read(entry.openBody()));
+
+        // A new cache instance over the same directory, like after process death.
+        entry = new ForecastDiskCache(mDirectory, 64 * 1024).get(TEST_URL);
+        assertNotNull("Error: entry didn't survive a new cache instance", entry);
+        assertFalse("Error: entry should be stale after max-age", entry.isFresh(now + 120000));
+    }
+
+    public void testPartiallyReadBodyIsNotCached() throws IOException {
+        ForecastDiskCache cache = new ForecastDiskCache(mDirectory, 64 * 1024);
+        long now = System.currentTimeMillis();
+        InputStream in = cache.put(TEST_URL, now + 60000, now,
+                new ByteArrayInputStream(TEST_BODY.getBytes("UTF-8")));
+        in.read(new byte[4]);
+        in.close();
+
+        assertNull("Error: partially read body shouldn't be cached", cache.get(TEST_URL));
+    }
+
+    public void testLeastRecentlyUsedEviction() throws IOException, InterruptedException {
+        // Room for about two entries.
+        ForecastDiskCache cache = new ForecastDiskCache(mDirectory, 2 * (TEST_URL.length() + 100));
+        long now = System.currentTimeMillis();
+        long expiresAt = now + 60000;
+
+        store(cache, TEST_URL + "&id=1", now, expiresAt, TEST_BODY);
+        // File times have a resolution of a second on some file systems.
+        Thread.sleep(1100);
+        store(cache, TEST_URL + "&id=2", now, expiresAt, TEST_BODY);
+        Thread.sleep(1100);
+        assertNotNull(cache.get(TEST_URL + "&id=1"));
+        Thread.sleep(1100);
+        store(cache, TEST_URL + "&id=3", now, expiresAt, TEST_BODY);
+
+        assertNotNull("Error: recently used entry was evicted", cache.get(TEST_URL + "&id=1"));
+        assertNull("Error: least recently used entry wasn't evicted", cache.get(TEST_URL + "&id=2"));
+        assertNotNull("Error: new entry was evicted", cache.get(TEST_URL + "&id=3"));
+    }
+
+    private static void store(ForecastDiskCache cache, String url, long fetchedAt,
+                              long expiresAt, String body) throws IOException {
+        read(cache.put(url, expiresAt, fetchedAt,
+                new ByteArrayInputStream(body.getBytes("UTF-8"))));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int count;
+        try {
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toString("UTF-8");
+    }
+
+    private void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+}
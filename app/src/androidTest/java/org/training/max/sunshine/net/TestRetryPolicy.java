@@ -0,0 +1,44 @@
+package org.training.max.sunshine.net;
+
+import android.test.AndroidTestCase;
+
+public class TestRetryPolicy extends AndroidTestCase {
+
+    public void testBackoffIsBoundedAndJittered() {
+        RetryPolicy policy = new RetryPolicy(4, 100, 300);
+
+        for (int i = 0; i < 50; i++) {
+            long delay = policy.getDelayMillis(1, -1);
+            assertTrue("Error: first delay out of range " + delay, delay >= 0 && delay <= 100);
+            delay = policy.getDelayMillis(3, -1);
+            assertTrue("Error: delay exceeds the maximum " + delay, delay >= 0 && delay <= 300);
+        }
+        assertEquals("Error: no retry expected after the last attempt",
+                -1, policy.getDelayMillis(4, -1));
+    }
+
+    public void testRetryAfterIsHonored() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 300);
+
+        assertTrue("Error: delay shorter than Retry-After", policy.getDelayMillis(1, 250) >= 250);
+        assertEquals("Error: Retry-After beyond the maximum delay shouldn't be waited for",
+                -1, policy.getDelayMillis(1, 1000));
+    }
+
+    public void testCircuitOpensAndRecovers() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(2, 200);
+
+        breaker.onFailure(-1);
+        assertTrue("Error: circuit opened before the threshold", breaker.allowRequest());
+        breaker.onFailure(-1);
+        assertTrue("Error: circuit should be open", breaker.isOpen());
+        assertFalse("Error: open circuit should fail fast", breaker.allowRequest());
+
+        Thread.sleep(250);
+        assertTrue("Error: half open circuit should allow a trial", breaker.allowRequest());
+        assertFalse("Error: only one trial is allowed", breaker.allowRequest());
+        breaker.onSuccess();
+        assertFalse("Error: successful trial should close the circuit", breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,92 @@
+package org.training.max.sunshine.net;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestTokenBucketRateLimiter extends AndroidTestCase {
+
+    public void testBurstThenSustainedRate() throws IOException {
+        // 2 requests back to back, then one every 100 ms.
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(2, 600);
+
+        long start = System.currentTimeMillis();
+        limiter.acquire(TokenBucketRateLimiter.PRIORITY_INTERACTIVE);
+        limiter.acquire(TokenBucketRateLimiter.PRIORITY_INTERACTIVE);
+        assertTrue("Error: burst shouldn't wait", System.currentTimeMillis() - start < 50);
+
+        limiter.acquire(TokenBucketRateLimiter.PRIORITY_INTERACTIVE);
+        assertTrue("Error: request beyond the burst should wait for a token",
+                System.currentTimeMillis() - start >= 90);
+    }
+
+    public void testInteractiveRequestsGoFirst() throws Exception {
+        final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 600);
+        limiter.acquire(TokenBucketRateLimiter.PRIORITY_BACKGROUND);
+
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        Thread background = startAcquire(limiter, TokenBucketRateLimiter.PRIORITY_BACKGROUND, order);
+        // Let the background request queue up first.
+        Thread.sleep(20);
+        Thread interactive = startAcquire(limiter, TokenBucketRateLimiter.PRIORITY_INTERACTIVE, order);
+        background.join(1000);
+        interactive.join(1000);
+
+        assertEquals("Error: interactive request should overtake the queued background one",
+                TokenBucketRateLimiter.PRIORITY_INTERACTIVE, (int) order.get(0));
+    }
+
+    public void testCancelledRequestLeavesTheLine() throws Exception {
+        // One token a minute, so nobody gets the next one during the test.
+        final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1);
+        limiter.acquire(TokenBucketRateLimiter.PRIORITY_INTERACTIVE);
+
+        CancellationToken token = CancellationToken.withTimeout(100);
+        long start = System.currentTimeMillis();
+        try {
+            limiter.acquire(TokenBucketRateLimiter.PRIORITY_INTERACTIVE, token);
+            fail("Error: acquire should give up at the deadline");
+        } catch (CancelledException e) {
+            assertTrue("Error: acquire gave up too late", System.currentTimeMillis() - start < 1000);
+        }
+
+        final CancellationToken cancelled = CancellationToken.create();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                cancelled.cancel();
+            }
+        }).start();
+        try {
+            limiter.acquire(TokenBucketRateLimiter.PRIORITY_INTERACTIVE, cancelled);
+            fail("Error: acquire should give up when cancelled");
+        } catch (CancelledException e) {
+            assertTrue(cancelled.isCancelled());
+        }
+    }
+
+    private static Thread startAcquire(final TokenBucketRateLimiter limiter, final int priority,
+                                       final List<Integer> order) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(priority);
+                    order.add(priority);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,57 @@
+package org.training.max.sunshine.sync;
+
+import android.test.AndroidTestCase;
+
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.CancelledException;
+import org.training.max.sunshine.net.LocalForecastServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+public class TestForecastPipeline extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "94043";
+
+    public void testDecodeStage() throws IOException {
+        ForecastBatch batch = new ForecastBatch(TEST_LOCATION);
+        new ForecastStages.JsonDecode().decode(forecastBody(14), batch, CancellationToken.NONE);
+
+        assertTrue("Error: city wasn't decoded", batch.hasCity());
+        assertEquals("Error: wrong city", "Mountain View", batch.getCityName());
+        assertEquals("Error: wrong count of decoded days", 14, batch.size());
+        assertNotNull("Error: day has no description", batch.getDescription(0));
+        assertEquals("Error: dates are set by normalization, not by decoding",
+                0, batch.getDate(0));
+    }
+
+    public void testDecodeStageStopsWhenCancelled() throws IOException {
+        CancellationToken token = CancellationToken.create();
+        token.cancel();
+        try {
+            new ForecastStages.JsonDecode().decode(forecastBody(14),
+                    new ForecastBatch(TEST_LOCATION), token);
+            fail("Error: cancelled decode should throw");
+        } catch (CancelledException e) {
+            // Expected.
+        }
+    }
+
+    public void testBatchGrowsAndSharesDescriptions() {
+        ForecastBatch batch = new ForecastBatch(TEST_LOCATION);
+        for (int i = 0; i < 40; i++) {
+            batch.addDay(800, i % 2 == 0 ? "Clear" : "Rain", i, -i, 1013.25f, 80, 2.5f, 180);
+        }
+
+        assertEquals("Error: wrong count of days", 40, batch.size());
+        assertEquals("Error: wrong high", 39f, batch.getHigh(39));
+        assertSame("Error: equal descriptions should share one string",
+                batch.getDescription(0), batch.getDescription(38));
+        assertEquals("Error: wrong description", "Rain", batch.getDescription(39));
+    }
+
+    private static ByteArrayInputStream forecastBody(int dayCount) throws IOException {
+        return new ByteArrayInputStream(
+                LocalForecastServer.generateForecast(dayCount).getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,35 @@
+package org.training.max.sunshine.sync;
+
+import android.test.AndroidTestCase;
+
+public class TestFreshnessPolicy extends AndroidTestCase {
+
+    private static final long MINUTE = 60 * 1000;
+
+    public void testFreshWithinTtl() {
+        FreshnessPolicy policy = new FreshnessPolicy(10 * MINUTE, 100 * MINUTE);
+        long now = 1000 * MINUTE;
+
+        assertFalse("Error: never synced location can't be fresh", policy.isFresh(0, 0, now));
+        assertTrue(policy.isFresh(now - 5 * MINUTE, 20 * MINUTE, now));
+        assertFalse(policy.isFresh(now - 25 * MINUTE, 20 * MINUTE, now));
+        assertFalse("Error: sync in the future should count as stale",
+                policy.isFresh(now + MINUTE, 20 * MINUTE, now));
+    }
+
+    public void testTtlAdaptsToChanges() {
+        FreshnessPolicy policy = new FreshnessPolicy(10 * MINUTE, 100 * MINUTE);
+
+        assertEquals("Error: unchanged forecast should be asked for less often",
+                80 * MINUTE, policy.nextTtl(40 * MINUTE, 0, 14));
+        assertEquals("Error: 304 should count as unchanged",
+                80 * MINUTE, policy.nextTtl(40 * MINUTE, 0, 0));
+        assertEquals("Error: volatile forecast should be asked for more often",
+                20 * MINUTE, policy.nextTtl(40 * MINUTE, 10, 14));
+        assertEquals(40 * MINUTE, policy.nextTtl(40 * MINUTE, 2, 14));
+
+        assertEquals("Error: TTL should stay within its bounds",
+                100 * MINUTE, policy.nextTtl(80 * MINUTE, 0, 14));
+        assertEquals(10 * MINUTE, policy.nextTtl(15 * MINUTE, 14, 14));
+    }
+}
@@ -0,0 +1,217 @@
+package org.training.max.sunshine.sync;
+
+import android.test.AndroidTestCase;
+
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.CancelledException;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRequestCoalescer extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "94043";
+    private static final int CALLERS = 8;
+
+    public void testConcurrentCallersShareOneRequest() throws Exception {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(60 * 1000);
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(CALLERS);
+        final String[] results = new String[CALLERS];
+
+        for (int i = 0; i < CALLERS; i++) {
+            final int caller = i;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        results[caller] = coalescer.execute(TEST_LOCATION,
+                                CancellationToken.create(),
+                                new RequestCoalescer.Request<String>() {
+                                    @Override
+                                    public String execute(CancellationToken token)
+                                            throws IOException {
+                                        executions.incrementAndGet();
+                                        try {
+                                            release.await();
+                                        } catch (InterruptedException e) {
+                                            throw new IOException(e);
+                                        }
+                                        return "forecast";
+                                    }
+                                });
+                    } catch (IOException e) {
+                        results[caller] = null;
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        Thread.sleep(200);
+        release.countDown();
+        finished.await();
+
+        assertEquals("Error: overlapping callers should execute one request", 1, executions.get());
+        for (String result : results) {
+            assertEquals("Error: every caller should get the shared result", "forecast", result);
+        }
+    }
+
+    public void testCancelledCallerDoesNotAbortOthers() throws Exception {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(60 * 1000);
+        final CancellationToken ownerToken = CancellationToken.create();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final String[] ownerResult = new String[1];
+
+        Thread owner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ownerResult[0] = coalescer.execute(TEST_LOCATION, ownerToken,
+                            new RequestCoalescer.Request<String>() {
+                                @Override
+                                public String execute(CancellationToken token)
+                                        throws IOException {
+                                    started.countDown();
+                                    try {
+                                        release.await();
+                                    } catch (InterruptedException e) {
+                                        throw new IOException(e);
+                                    }
+                                    token.throwIfCancelled();
+                                    return "forecast";
+                                }
+                            });
+                } catch (IOException e) {
+                    ownerResult[0] = null;
+                }
+            }
+        };
+        owner.start();
+        started.await();
+
+        final CancellationToken joinerToken = CancellationToken.create();
+        final String[] joinerResult = new String[1];
+        Thread joiner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    joinerResult[0] = coalescer.execute(TEST_LOCATION, joinerToken,
+                            new RequestCoalescer.Request<String>() {
+                                @Override
+                                public String execute(CancellationToken token) {
+                                    return "second request";
+                                }
+                            });
+                } catch (IOException e) {
+                    joinerResult[0] = null;
+                }
+            }
+        };
+        joiner.start();
+
+        Thread.sleep(200);
+        ownerToken.cancel();
+        release.countDown();
+        joiner.join();
+        owner.join();
+
+        assertEquals("Error: the joiner should get the shared result although the owner left",
+                "forecast", joinerResult[0]);
+    }
+
+    public void testRequestIsCancelledWhenAllCallersLeft() throws Exception {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(60 * 1000);
+        final CancellationToken token = CancellationToken.create();
+        try {
+            coalescer.execute(TEST_LOCATION, token, new RequestCoalescer.Request<String>() {
+                @Override
+                public String execute(CancellationToken sharedToken) throws IOException {
+                    token.cancel();
+                    sharedToken.throwIfCancelled();
+                    return "forecast";
+                }
+            });
+            fail("Error: the request should be cancelled when nobody waits for it");
+        } catch (CancelledException e) {
+            // Expected.
+        }
+    }
+
+    public void testJoinerStopsWaitingAtItsDeadline() throws Exception {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(60 * 1000);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread owner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    coalescer.execute(TEST_LOCATION, CancellationToken.create(),
+                            new RequestCoalescer.Request<String>() {
+                                @Override
+                                public String execute(CancellationToken token)
+                                        throws IOException {
+                                    started.countDown();
+                                    try {
+                                        release.await();
+                                    } catch (InterruptedException e) {
+                                        throw new IOException(e);
+                                    }
+                                    return "forecast";
+                                }
+                            });
+                } catch (IOException e) {
+                    // Not checked here.
+                }
+            }
+        };
+        owner.start();
+        started.await();
+
+        try {
+            coalescer.execute(TEST_LOCATION, CancellationToken.withTimeout(100),
+                    new RequestCoalescer.Request<String>() {
+                        @Override
+                        public String execute(CancellationToken token) {
+                            return "second request";
+                        }
+                    });
+            fail("Error: the joiner should give up at its own deadline");
+        } catch (CancelledException e) {
+            // Expected.
+        } finally {
+            release.countDown();
+            owner.join();
+        }
+    }
+
+    public void testFailureIsNotShared() throws Exception {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(60 * 1000);
+        try {
+            coalescer.execute(TEST_LOCATION, CancellationToken.NONE,
+                    new RequestCoalescer.Request<String>() {
+                        @Override
+                        public String execute(CancellationToken token) throws IOException {
+                            throw new IOException("Network is down");
+                        }
+                    });
+            fail("Error: the failure should be thrown to the caller");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        String result = coalescer.execute(TEST_LOCATION, CancellationToken.NONE,
+                new RequestCoalescer.Request<String>() {
+                    @Override
+                    public String execute(CancellationToken token) throws IOException {
+                        return "forecast";
+                    }
+                });
+        assertEquals("Error: a failed request shouldn't be reused", "forecast", result);
+    }
+}
@@ -0,0 +1,48 @@
+package org.training.max.sunshine.util;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+public class TestDayMath extends AndroidTestCase {
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private TimeZone mDefaultTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultTimeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TimeZone.setDefault(mDefaultTimeZone);
+        super.tearDown();
+    }
+
+    public void testNormalizeDateMatchesTime() {
+        long start = 1419033600000L;  // December 20th, 2014
+        // Both sides of the DST changes, east and west of UTC, and a zone with a half hour.
+        for (String id : new String[]{"UTC", "America/Los_Angeles", "Europe/Moscow",
+                "Australia/Sydney", "Asia/Kolkata"}) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            TimeZone.setDefault(timeZone);
+            for (long time = start; time < start + TimeUnit.DAYS.toMillis(366);
+                 time += 7 * HOUR_MILLIS) {
+                assertEquals("Error: start of the day differs from Time in " + id + " at " + time,
+                        normalizeWithTime(time), DayMath.normalizeDate(time, timeZone));
+            }
+        }
+    }
+
+    private static long normalizeWithTime(long millis) {
+        Time time = new Time();
+        time.set(millis);
+        int julianDay = Time.getJulianDay(millis, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+}
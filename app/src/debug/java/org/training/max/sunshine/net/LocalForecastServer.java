@@ -0,0 +1,430 @@
+package org.training.max.sunshine.net;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process HTTP server which stands in for the OpenWeatherMap daily forecast API.
+ * <p>
+ * It serves a recorded forecast, or one generated in the OWM format for the requested
+ * {@code cnt}, with configurable latency, bandwidth and injected errors. Validators, 304
+ * responses, gzip and keep-alive behave like the real service, so the whole
+ * fetch, parse and store path can be measured offline.
+ * <p>
+ * Plain Java only: besides instrumentation tests it runs on any JVM, see {@link #main}.
+ */
+public class LocalForecastServer {
+
+    private static final int DEFAULT_DAY_COUNT = 14;
+    private static final int CHUNK_SIZE = 1024;
+    private static final String CHARSET = "UTF-8";
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mFailuresToInject = new AtomicInteger();
+    private final Random mRandom = new Random();
+
+    private volatile String mForecastJson;
+    private volatile long mLatencyMillis;
+    private volatile long mBytesPerSecond;
+    private volatile double mFailureRate;
+    private volatile int mFailureStatus = 503;
+    private volatile long mRetryAfterSeconds = -1;
+    private volatile long mMaxAgeSeconds;
+
+    private ServerSocket mServerSocket;
+
+    /**
+     * Start listening on a free port of the loopback interface.
+     *
+     * @throws IOException if the socket can't be bound
+     */
+    public void start() throws IOException {
+        start(0);
+    }
+
+    /**
+     * Start listening on the loopback interface.
+     *
+     * @param port port to listen on, 0 for any free one
+     * @throws IOException if the socket can't be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        if (mServerSocket != null) {
+            throw new IllegalStateException("Server is already started");
+        }
+        mServerSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        final ServerSocket serverSocket = mServerSocket;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(serverSocket);
+            }
+        });
+    }
+
+    /**
+     * Stop listening and close all connections.
+     */
+    public synchronized void shutdown() {
+        if (mServerSocket != null) {
+            try {
+                mServerSocket.close();
+            } catch (IOException e) {
+                // Nothing left to do with it.
+            }
+            mServerSocket = null;
+        }
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public synchronized int getPort() {
+        if (mServerSocket == null) {
+            throw new IllegalStateException("Server isn't started");
+        }
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * @return count of requests received so far, including the failed ones
+     */
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @param forecastJson recorded OWM response to serve, 'null' to generate one per request
+     */
+    public void setForecastJson(String forecastJson) {
+        mForecastJson = forecastJson;
+    }
+
+    /**
+     * @param latencyMillis delay before every response is sent
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param bytesPerSecond bandwidth of the response bodies, 0 for unlimited
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @param failureRate share of the requests, from 0 to 1, answered with the failure status
+     */
+    public void setFailureRate(double failureRate) {
+        mFailureRate = failureRate;
+    }
+
+    /**
+     * @param count count of the next requests which are answered with the failure status
+     */
+    public void failNextRequests(int count) {
+        mFailuresToInject.set(count);
+    }
+
+    /**
+     * @param status            status of injected failures, 503 by default
+     * @param retryAfterSeconds Retry-After sent with them, -1 for none
+     */
+    public void setFailureStatus(int status, long retryAfterSeconds) {
+        mFailureStatus = status;
+        mRetryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @param maxAgeSeconds Cache-Control max-age of the successful responses, 0 for none
+     */
+    public void setMaxAgeSeconds(long maxAgeSeconds) {
+        mMaxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Generate a forecast in the OWM daily format.
+     *
+     * @param dayCount count of days in the list
+     * @return response body
+     */
+    public static String generateForecast(int dayCount) {
+        StringBuilder json = new StringBuilder(256 + dayCount * 400);
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.0838,\"lat\":37.3861},\"country\":\"US\"},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(dayCount)
+                .append(",\"list\":[");
+        long dt = 1484740800L;
+        for (int i = 0; i < dayCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            double max = 15 + (i * 7) % 10;
+            double min = max - 8 - i % 3;
+            json.append("{\"dt\":").append(dt + i * 86400L)
+                    .append(",\"temp\":{\"day\":").append(max - 1)
+                    .append(",\"min\":").append(min)
+                    .append(",\"max\":").append(max)
+                    .append(",\"night\":").append(min + 1)
+                    .append(",\"eve\":").append(max - 2)
+                    .append(",\"morn\":").append(min)
+                    .append("},\"pressure\":").append(1010 + i % 7)
+                    .append(",\"humidity\":").append(50 + (i * 3) % 40)
+                    .append(",\"weather\":[{\"id\":").append(i % 2 == 0 ? 800 : 500)
+                    .append(",\"main\":\"").append(i % 2 == 0 ? "Clear" : "Rain")
+                    .append("\",\"description\":\"").append(i % 2 == 0 ? "sky is clear" : "light rain")
+                    .append("\",\"icon\":\"01d\"}],\"speed\":").append(1 + i % 5)
+                    .append(",\"deg\":").append((i * 45) % 360)
+                    .append(",\"clouds\":").append(i % 2 == 0 ? 0 : 75)
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private void acceptConnections(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    serveConnection(socket);
+                }
+            });
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            // Keep-alive: serve requests until the client closes the connection.
+            while (serveRequest(in, out)) {
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // The client went away.
+        } catch (IOException | InterruptedException e) {
+            // Drop the connection like a flaky network would.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to do with it.
+            }
+        }
+    }
+
+    /**
+     * @return 'false' if the connection must be closed afterwards
+     */
+    private boolean serveRequest(InputStream in, OutputStream out)
+            throws IOException, InterruptedException {
+        String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) {
+            return false;
+        }
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        mRequestCount.incrementAndGet();
+        boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+
+        if (mLatencyMillis > 0) {
+            Thread.sleep(mLatencyMillis);
+        }
+
+        if (shouldFail()) {
+            StringBuilder failure = new StringBuilder()
+                    .append("HTTP/1.1 ").append(mFailureStatus).append(" Injected failure\r\n")
+                    .append("Content-Length: 0\r\n");
+            if (mRetryAfterSeconds >= 0) {
+                failure.append("Retry-After: ").append(mRetryAfterSeconds).append("\r\n");
+            }
+            out.write(failure.append("\r\n").toString().getBytes(CHARSET));
+            return keepAlive;
+        }
+
+        String[] parts = requestLine.split(" ");
+        String body = mForecastJson;
+        if (body == null) {
+            body = generateForecast(parseDayCount(parts.length > 1 ? parts[1] : ""));
+        }
+        String eTag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+
+        StringBuilder head = new StringBuilder();
+        if (eTag.equals(headers.get("if-none-match"))) {
+            head.append("HTTP/1.1 304 Not Modified\r\n");
+            appendCommonHeaders(head, eTag);
+            out.write(head.append("\r\n").toString().getBytes(CHARSET));
+            return keepAlive;
+        }
+
+        byte[] bytes = body.getBytes(CHARSET);
+        head.append("HTTP/1.1 200 OK\r\n")
+                .append("Content-Type: application/json; charset=utf-8\r\n");
+        String acceptEncoding = headers.get("accept-encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            bytes = gzip(bytes);
+            head.append("Content-Encoding: gzip\r\n");
+        }
+        appendCommonHeaders(head, eTag);
+        head.append("Content-Length: ").append(bytes.length).append("\r\n\r\n");
+        out.write(head.toString().getBytes(CHARSET));
+        writeThrottled(out, bytes);
+        return keepAlive;
+    }
+
+    private void appendCommonHeaders(StringBuilder head, String eTag) {
+        head.append("ETag: ").append(eTag).append("\r\n");
+        if (mMaxAgeSeconds > 0) {
+            head.append("Cache-Control: max-age=").append(mMaxAgeSeconds).append("\r\n");
+        }
+    }
+
+    private boolean shouldFail() {
+        while (true) {
+            int failures = mFailuresToInject.get();
+            if (failures <= 0) {
+                break;
+            }
+            if (mFailuresToInject.compareAndSet(failures, failures - 1)) {
+                return true;
+            }
+        }
+        double failureRate = mFailureRate;
+        if (failureRate <= 0) {
+            return false;
+        }
+        synchronized (mRandom) {
+            return mRandom.nextDouble() < failureRate;
+        }
+    }
+
+    private void writeThrottled(OutputStream out, byte[] bytes)
+            throws IOException, InterruptedException {
+        long bytesPerSecond = mBytesPerSecond;
+        if (bytesPerSecond <= 0) {
+            out.write(bytes);
+            return;
+        }
+        for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+            int count = Math.min(CHUNK_SIZE, bytes.length - offset);
+            out.write(bytes, offset, count);
+            out.flush();
+            Thread.sleep(count * 1000L / bytesPerSecond);
+        }
+    }
+
+    private static int parseDayCount(String target) {
+        int query = target.indexOf('?');
+        if (query < 0) {
+            return DEFAULT_DAY_COUNT;
+        }
+        for (String parameter : target.substring(query + 1).split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && "cnt".equals(parameter.substring(0, equals))) {
+                try {
+                    int dayCount = Integer.parseInt(
+                            URLDecoder.decode(parameter.substring(equals + 1), CHARSET));
+                    return Math.max(1, Math.min(dayCount, 16));
+                } catch (NumberFormatException | UnsupportedEncodingException e) {
+                    return DEFAULT_DAY_COUNT;
+                }
+            }
+        }
+        return DEFAULT_DAY_COUNT;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(CHARSET);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(bytes);
+        gzip.close();
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Run the server on its own, e.g. to load-test a device or emulator over adb reverse.
+     * Arguments: [port [recorded forecast JSON file [latency ms [bytes per second]]]].
+     */
+    public static void main(String[] args) throws IOException {
+        LocalForecastServer server = new LocalForecastServer();
+        if (args.length > 1) {
+            server.setForecastJson(readFile(new File(args[1])));
+        }
+        if (args.length > 2) {
+            server.setLatencyMillis(Long.parseLong(args[2]));
+        }
+        if (args.length > 3) {
+            server.setBytesPerSecond(Long.parseLong(args[3]));
+        }
+        server.start(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        System.out.println("Serving forecasts on http://127.0.0.1:" + server.getPort());
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toString(CHARSET);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.training.max.sunshine.net;
+
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Transport which sends the requests built for OpenWeatherMap to a {@link LocalForecastServer}
+ * instead. Only the scheme, host and port are replaced, path and query are kept.
+ */
+public class LocalServerTransport implements ForecastTransport {
+
+    private final ForecastTransport mDelegate;
+    private final int mPort;
+
+    /**
+     * @param delegate transport which sends the redirected requests
+     * @param port     port of the local server
+     */
+    public LocalServerTransport(ForecastTransport delegate, int port) {
+        mDelegate = delegate;
+        mPort = port;
+    }
+
+    @Override
+    public Response execute(Request request, CancellationToken token) throws IOException {
+        HttpUrl url = request.url().newBuilder()
+                .scheme("http")
+                .host("127.0.0.1")
+                .port(mPort)
+                .build();
+        return mDelegate.execute(request.newBuilder().url(url).build(), token);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalServerTransport{" + mDelegate + "}";
+    }
+}
@@ -15,389 +15,225 @@
  */
 package org.training.max.sunshine;
 
-import android.content.ContentValues;
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
-import android.preference.PreferenceManager;
-import android.text.format.Time;
 import android.util.Log;
 import android.widget.ArrayAdapter;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.CircuitOpenException;
+import org.training.max.sunshine.net.TokenBucketRateLimiter;
+import org.training.max.sunshine.sync.ForecastPipeline;
+import org.training.max.sunshine.sync.ForecastSync;
+import org.training.max.sunshine.sync.ForecastTimings;
+import org.training.max.sunshine.util.ConditionDictionary;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Vector;
 
 import static org.training.max.sunshine.data.WeatherContract.WeatherEntry;
 
-public class FetchWeatherTask extends AsyncTask<String, Void, String[]> {
+/**
+ * Brings the forecast of the preferred location up to date and shows it. The stored forecast
+ * is projected into the list items as the last stage of the {@link ForecastPipeline}.
+ */
+public class FetchWeatherTask extends AsyncTask<Void, Void, String[]>
+        implements ForecastPipeline.ProjectStage<String[]> {
 
     private final String LOG_TAG = FetchWeatherTask.class.getSimpleName();
 
+    // The user won't wait for a refresh longer than that, the stored forecast is shown instead.
+    private static final long REFRESH_DEADLINE_MILLIS = 30 * 1000;
+
     private ArrayAdapter<String> mForecastAdapter;
     private final Context mContext;
+    // Created when the task starts running, so time spent queued doesn't count to the deadline.
+    private volatile CancellationToken mCancellationToken;
+
+    private final boolean mRefresh;
+    // The adapter is only read on the UI thread, so whether it shows a forecast is noted here.
+    private final boolean mForecastShown;
 
-    public FetchWeatherTask(Context context, ArrayAdapter<String> forecastAdapter) {
+    /**
+     * @param context         any context
+     * @param forecastAdapter adapter which gets the forecast, called on the UI thread
+     * @param refresh         'true' to bring the stored forecast up to date first, 'false' to
+     *                        go to the network only if nothing fresh is stored
+     */
+    public FetchWeatherTask(Context context, ArrayAdapter<String> forecastAdapter,
+                            boolean refresh) {
         mContext = context;
         mForecastAdapter = forecastAdapter;
+        mRefresh = refresh;
+        mForecastShown = forecastAdapter != null && forecastAdapter.getCount() > 0;
     }
 
     private boolean DEBUG = true;
 
-    /* The date/time conversion code is going to be moved outside the asynctask later,
-     * so for convenience we're breaking it out into its own method now.
+    /**
+     * @return 'true' if the task brings the stored forecast up to date first
      */
-    private String getReadableDateString(long time){
-        // Because the API returns a unix timestamp (measured in seconds),
-        // it must be converted to milliseconds in order to be converted to valid date.
-        Date date = new Date(time);
-        SimpleDateFormat format = new SimpleDateFormat("E, MMM d");
-        return format.format(date).toString();
+    public boolean isRefresh() {
+        return mRefresh;
     }
 
     /**
-     * Prepare the weather high/lows for presentation.
+     * Abandon the refresh, e.g. because its screen went away. The connection, the parser and
+     * the store transaction stop at their next check and the result isn't delivered.
+     * The thread isn't interrupted: it may run a request which other refreshes still wait for.
      */
-    private String formatHighLows(double high, double low) {
-        // Data is fetched in Celsius by default.
-        // If user prefers to see in Fahrenheit, convert the values here.
-        // We do this rather than fetching in Fahrenheit so that the user can
-        // change this option without us having to re-fetch the data once
-        // we start storing the values in a database.
-        SharedPreferences sharedPrefs =
-                PreferenceManager.getDefaultSharedPreferences(mContext);
-        String unitType = sharedPrefs.getString(
-                mContext.getString(R.string.pref_units_key),
-                mContext.getString(R.string.pref_units_metric));
-
-        if (unitType.equals(mContext.getString(R.string.pref_units_imperial))) {
-            high = (high * 1.8) + 32;
-            low = (low * 1.8) + 32;
-        } else if (!unitType.equals(mContext.getString(R.string.pref_units_metric))) {
-            Log.d(LOG_TAG, "Unit type not found: " + unitType);
+    public void cancelRefresh() {
+        cancel(false);
+        CancellationToken token = mCancellationToken;
+        if (token != null) {
+            token.cancel();
         }
-
-        // For presentation, assume the user doesn't care about tenths of a degree.
-        long roundedHigh = Math.round(high);
-        long roundedLow = Math.round(low);
-
-        String highLowStr = roundedHigh + "/" + roundedLow;
-        return highLowStr;
     }
 
+    // Columns of the stored forecast which are needed to show it.
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    // These indices are tied to FORECAST_COLUMNS.
+    private static final int COL_WEATHER_ID = 0;
+    private static final int COL_WEATHER_DATE = 1;
+    private static final int COL_WEATHER_DESC = 2;
+    private static final int COL_WEATHER_MAX_TEMP = 3;
+    private static final int COL_WEATHER_MIN_TEMP = 4;
+    private static final int COL_WEATHER_CONDITION_ID = 5;
+
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Read the forecast which is already stored for the location, starting from today,
+     * and time it.
      *
      * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        // Students: First, check if the location with this city name exists in the db
-        // If it exists, return the current ID
-        // Otherwise, insert it using the content resolver and the base URI
-        return -1;
-    }
-
-    /*
-        Students: This code will allow the FetchWeatherTask to continue to return the strings that
-        the UX expects so that we can continue to test the application even once we begin using
-        the database.
+     * @return stored forecast in the UX format, 'null' if nothing is stored for the location
      */
-    String[] convertContentValuesToUXFormat(Vector<ContentValues> cvv) {
-        // return strings to keep UI functional for now
-        String[] resultStrs = new String[cvv.size()];
-        for ( int i = 0; i < cvv.size(); i++ ) {
-            ContentValues weatherValues = cvv.elementAt(i);
-            String highAndLow = formatHighLows(
-                    weatherValues.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
-                    weatherValues.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
-            resultStrs[i] = getReadableDateString(
-                    weatherValues.getAsLong(WeatherEntry.COLUMN_DATE)) +
-                    " - " + weatherValues.getAsString(WeatherEntry.COLUMN_SHORT_DESC) +
-                    " - " + highAndLow;
+    private String[] getWeatherDataFromStore(String locationSetting) {
+        ForecastTimings timings = new ForecastTimings();
+        String[] forecast = ForecastPipeline.project(this, locationSetting, timings);
+        if (DEBUG) {
+            Log.d(LOG_TAG, "Forecast for " + locationSetting + " projected, " + timings);
         }
-        return resultStrs;
+        return forecast;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Read the forecast which is already stored for the location, starting from today and
+     * as many days long as the user asked for.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @param locationSetting The location string used to request updates from the server.
+     * @return stored forecast in the UX format, 'null' if nothing is stored for the location
      */
-    private String[] getWeatherDataFromJson(String forecastJsonStr,
-                                            String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+    @Override
+    public String[] project(String locationSetting) {
+        ForecastSettings settings = ForecastSettings.get(mContext);
+
+        // Sort order:  Ascending, by date. Days stored for a longer window than the current one
+        // aren't shown.
+        String sortOrder = WeatherEntry.COLUMN_DATE + " ASC LIMIT " + settings.getDayCount();
+        Uri weatherForLocationUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+
+        Cursor cur = mContext.getContentResolver().query(weatherForLocationUri,
+                FORECAST_COLUMNS, null, null, sortOrder);
+        if (cur == null) {
+            return null;
+        }
 
+        // Rows whose values didn't change since they were last shown come from the render cache.
+        ForecastRowRenderer renderer = ForecastRowRenderer.getInstance();
+        ForecastSettings.Units units = settings.getUnits();
+        String[] resultStrs;
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+            if (cur.getCount() == 0) {
+                return null;
             }
-
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                // Student: call bulkInsert to add the weatherEntries to the database here
+            resultStrs = new String[cur.getCount()];
+            for (int i = 0; cur.moveToNext(); i++) {
+                // The description of a known condition isn't copied out of the cursor again.
+                int conditionId = cur.getInt(COL_WEATHER_CONDITION_ID);
+                String description = ConditionDictionary.get(conditionId);
+                if (description == null) {
+                    description = ConditionDictionary.intern(conditionId,
+                            cur.getString(COL_WEATHER_DESC));
+                }
+                resultStrs[i] = renderer.render(
+                        cur.getLong(COL_WEATHER_ID),
+                        cur.getLong(COL_WEATHER_DATE),
+                        description,
+                        cur.getDouble(COL_WEATHER_MAX_TEMP),
+                        cur.getDouble(COL_WEATHER_MIN_TEMP),
+                        units);
             }
-
-            // Sort order:  Ascending, by date.
-            String sortOrder = WeatherEntry.COLUMN_DATE + " ASC";
-            Uri weatherForLocationUri = WeatherEntry.buildWeatherLocationWithStartDate(
-                    locationSetting, System.currentTimeMillis());
-
-            // Students: Uncomment the next lines to display what what you stored in the bulkInsert
-
-//            Cursor cur = mContext.getContentResolver().query(weatherForLocationUri,
-//                    null, null, null, sortOrder);
-//
-//            cVVector = new Vector<ContentValues>(cur.getCount());
-//            if ( cur.moveToFirst() ) {
-//                do {
-//                    ContentValues cv = new ContentValues();
-//                    DatabaseUtils.cursorRowToContentValues(cur, cv);
-//                    cVVector.add(cv);
-//                } while (cur.moveToNext());
-//            }
-
-            Log.d(LOG_TAG, "FetchWeatherTask Complete. " + cVVector.size() + " Inserted");
-
-            String[] resultStrs = convertContentValuesToUXFormat(cVVector);
-            return resultStrs;
-
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
+        } finally {
+            cur.close();
         }
-        return null;
+        return resultStrs;
     }
 
     @Override
-    protected String[] doInBackground(String... params) {
+    protected String[] doInBackground(Void... params) {
+        // The settings may not be loaded yet, so they are read here rather than on the UI thread.
+        String locationQuery = ForecastSettings.get(mContext).getLocation();
 
-        // If there's no zip code, there's nothing to look up.  Verify size of params.
-        if (params.length == 0) {
+        // If there's no zip code, there's nothing to look up.
+        if (locationQuery == null || locationQuery.isEmpty()) {
             return null;
         }
-        String locationQuery = params[0];
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        CancellationToken token = CancellationToken.withTimeout(REFRESH_DEADLINE_MILLIS);
+        mCancellationToken = token;
+        if (isCancelled()) {
+            // cancelRefresh() ran before the token was published.
+            token.cancel();
+        }
 
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, params[0])
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return null;
+            // Bring the stored forecast up to date, then show what is stored. While the
+            // background sync keeps the store fresh, syncIfStale doesn't go to the network.
+            ForecastSync sync = new ForecastSync(mContext);
+            int changedDays;
+            if (mRefresh) {
+                changedDays = sync.sync(locationQuery,
+                        TokenBucketRateLimiter.PRIORITY_INTERACTIVE, token);
+            } else {
+                changedDays = sync.syncIfStale(locationQuery,
+                        TokenBucketRateLimiter.PRIORITY_INTERACTIVE, token);
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
+            if (mRefresh && mForecastShown && changedDays <= ForecastSync.NOT_MODIFIED) {
+                // No stored day changed and the list shows them already. A task which isn't
+                // a refresh projects anyway: it runs on start, after the settings may have
+                // changed.
                 return null;
             }
-            forecastJsonStr = buffer.toString();
+            return getWeatherDataFromStore(locationQuery);
+        } catch (CircuitOpenException e) {
+            // OWM is unhealthy, don't wait for it and show what we have.
+            Log.w(LOG_TAG, e.getMessage());
+            return getWeatherDataFromStore(locationQuery);
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attemping
-            // to parse it.
-            return null;
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
+            if (isCancelled()) {
+                // Nobody is waiting for the result.
+                return null;
             }
+            // Either the weather data couldn't be fetched or it couldn't be parsed.
+            // The forecast stored by an earlier refresh is still worth showing.
+            Log.e(LOG_TAG, "Error ", e);
+            return getWeatherDataFromStore(locationQuery);
         }
-
-        try {
-            return getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-        }
-        // This will only happen if there was an error getting or parsing the forecast.
-        return null;
     }
 
     @Override
     protected void onPostExecute(String[] result) {
-        if (result != null && mForecastAdapter != null) {
+        if (result != null && mForecastAdapter != null && !isShown(result)) {
             mForecastAdapter.clear();
             for(String dayForecastStr : result) {
                 mForecastAdapter.add(dayForecastStr);
@@ -405,4 +241,22 @@ public class FetchWeatherTask extends AsyncTask<String, Void, String[]> {
             // New data is back from the server.  Hooray!
         }
     }
+
+    /**
+     * A task which found the store unchanged, e.g. on start, projects the rows which are shown
+     * already, the render cache even hands out the same strings. The list isn't touched for them.
+     *
+     * @return 'true' if the adapter shows exactly these rows
+     */
+    private boolean isShown(String[] result) {
+        if (mForecastAdapter.getCount() != result.length) {
+            return false;
+        }
+        for (int i = 0; i < result.length; i++) {
+            if (!result[i].equals(mForecastAdapter.getItem(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
\ No newline at end of file
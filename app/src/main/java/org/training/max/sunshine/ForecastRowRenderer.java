@@ -0,0 +1,109 @@
+package org.training.max.sunshine;
+
+import org.training.max.sunshine.util.DayLabelFormatter;
+import org.training.max.sunshine.util.TemperatureFormatter;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders stored forecast days into the text of the list rows and keeps the result.
+ * <p>
+ * Finished rows are kept in an LRU cache by weather row ID together with the values, units and
+ * locale they were rendered for. An unchanged row costs a lookup, and a row whose units or
+ * locale changed is rendered again from its values without touching the database.
+ * Temperatures are formatted by {@link TemperatureFormatter}.
+ */
+public final class ForecastRowRenderer {
+
+    // Enough for all days of a few locations.
+    private static final int MAX_CACHED_ROWS = 256;
+
+    private static final ForecastRowRenderer sInstance = new ForecastRowRenderer();
+
+    /**
+     * Rendered row with what it was rendered from.
+     */
+    private static final class Row {
+        long date;
+        String description;
+        double high;
+        double low;
+
+        ForecastSettings.Units units;
+        Locale locale;
+        String highLow;
+        String text;
+
+        boolean hasValues(long date, String description, double high, double low) {
+            return this.date == date && this.high == high && this.low == low
+                    && (this.description == null
+                    ? description == null : this.description.equals(description));
+        }
+    }
+
+    private final Map<Long, Row> mRows =
+            new LinkedHashMap<Long, Row>(MAX_CACHED_ROWS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Row> eldest) {
+                    return size() > MAX_CACHED_ROWS;
+                }
+            };
+
+    /**
+     * @return the renderer shared by the app
+     */
+    public static ForecastRowRenderer getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * @param rowId       ID of the stored weather row
+     * @param date        date of the day
+     * @param description short description of the weather
+     * @param high        highest temperature, in Celsius
+     * @param low         lowest temperature, in Celsius
+     * @param units       units the temperatures are shown in
+     * @return text of the row, e.g. "Mon, Jun 3 - Clear - 21/12 C"
+     */
+    public synchronized String render(long rowId, long date, String description, double high,
+                                      double low, ForecastSettings.Units units) {
+        Locale locale = Locale.getDefault();
+        Row row = mRows.get(rowId);
+        if (row == null || !row.hasValues(date, description, high, low)) {
+            row = new Row();
+            row.date = date;
+            row.description = description;
+            row.high = high;
+            row.low = low;
+            mRows.put(rowId, row);
+        } else if (row.units == units && row.locale.equals(locale)) {
+            return row.text;
+        }
+
+        if (row.units != units) {
+            row.highLow = formatHighLows(high, low, units);
+            row.units = units;
+        }
+        row.locale = locale;
+        row.text = DayLabelFormatter.getInstance().format(date) + " - " + description + " - "
+                + row.highLow;
+        return row.text;
+    }
+
+    /**
+     * Drop all rendered rows.
+     */
+    public synchronized void clear() {
+        mRows.clear();
+    }
+
+    /**
+     * Prepare the weather high/lows for presentation.
+     */
+    static String formatHighLows(double high, double low, ForecastSettings.Units units) {
+        return TemperatureFormatter.formatHighLows(high, low,
+                units == ForecastSettings.Units.IMPERIAL);
+    }
+}
@@ -0,0 +1,140 @@
+package org.training.max.sunshine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import org.training.max.sunshine.util.BuildUtils;
+
+/**
+ * Immutable snapshot of the user settings.
+ * <p>
+ * Hot paths read the current snapshot with {@link #get(Context)} instead of going through
+ * SharedPreferences and resolving the preference keys for every row. The snapshot is loaded
+ * once, preferably off the main thread, because the first read of the default preferences
+ * loads them from disk. It is replaced as a whole when a setting
+ * changes, see {@link #reload(Context)}.
+ */
+public final class ForecastSettings {
+
+    private static final String LOG_TAG = ForecastSettings.class.getSimpleName();
+
+    /**
+     * Units the temperatures are shown in. They are always fetched and stored in metric.
+     */
+    public enum Units {
+        METRIC,
+        IMPERIAL
+    }
+
+    private static volatile ForecastSettings sCurrent;
+
+    private final String mLocation;
+    private final Units mUnits;
+    private final int mDayCount;
+    private final long mSyncIntervalMillis;
+    private final boolean mSyncUnmeteredOnly;
+
+    private ForecastSettings(String location, Units units, int dayCount, long syncIntervalMillis,
+                             boolean syncUnmeteredOnly) {
+        mLocation = location;
+        mUnits = units;
+        mDayCount = dayCount;
+        mSyncIntervalMillis = syncIntervalMillis;
+        mSyncUnmeteredOnly = syncUnmeteredOnly;
+    }
+
+    /**
+     * @param context any context
+     * @return current settings, they are read on this thread if they aren't loaded yet
+     */
+    public static ForecastSettings get(Context context) {
+        ForecastSettings settings = sCurrent;
+        return settings != null ? settings : reload(context);
+    }
+
+    /**
+     * Read the settings again and replace the current snapshot, e.g. because one of them changed.
+     *
+     * @param context any context
+     * @return new snapshot
+     */
+    public static synchronized ForecastSettings reload(Context context) {
+        Context appContext = context.getApplicationContext();
+        ForecastSettings settings =
+                read(appContext, PreferenceManager.getDefaultSharedPreferences(appContext));
+        sCurrent = settings;
+        return settings;
+    }
+
+    private static ForecastSettings read(Context context, SharedPreferences sharedPrefs) {
+        String location = sharedPrefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String unitType = sharedPrefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric));
+        Units units = Units.METRIC;
+        if (unitType.equals(context.getString(R.string.pref_units_imperial))) {
+            units = Units.IMPERIAL;
+        } else if (!unitType.equals(context.getString(R.string.pref_units_metric))) {
+            Log.d(LOG_TAG, "Unit type not found: " + unitType);
+        }
+
+        int dayCount;
+        try {
+            dayCount = Math.max(1, Math.min(BuildUtils.MAX_DAY_COUNT, Integer.parseInt(
+                    sharedPrefs.getString(context.getString(R.string.pref_days_key),
+                            context.getString(R.string.pref_days_default)))));
+        } catch (NumberFormatException e) {
+            dayCount = BuildUtils.DEFAULT_DAY_COUNT;
+        }
+
+        long syncIntervalMillis;
+        try {
+            syncIntervalMillis = Long.parseLong(sharedPrefs.getString(
+                    context.getString(R.string.pref_sync_interval_key),
+                    context.getString(R.string.pref_sync_interval_default))) * 60 * 1000;
+        } catch (NumberFormatException e) {
+            syncIntervalMillis = 0;
+        }
+
+        boolean syncUnmeteredOnly = sharedPrefs.getBoolean(
+                context.getString(R.string.pref_sync_unmetered_only_key), false);
+
+        return new ForecastSettings(location, units, dayCount, syncIntervalMillis,
+                syncUnmeteredOnly);
+    }
+
+    /**
+     * @return the location string used to request updates from the server
+     */
+    public String getLocation() {
+        return mLocation;
+    }
+
+    public Units getUnits() {
+        return mUnits;
+    }
+
+    /**
+     * @return count of forecast days the user asked for
+     */
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    /**
+     * @return interval of the background sync, 0 if it is off
+     */
+    public long getSyncIntervalMillis() {
+        return mSyncIntervalMillis;
+    }
+
+    /**
+     * @return 'true' if the background sync skips metered connections
+     */
+    public boolean isSyncUnmeteredOnly() {
+        return mSyncUnmeteredOnly;
+    }
+}
@@ -1,15 +1,17 @@
 package org.training.max.sunshine;
 
+import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 
+import org.training.max.sunshine.sync.ForecastSyncScheduler;
+
 /**
  * Main activity. Entry point of application.
  */
@@ -28,6 +30,15 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        // The first read of the settings goes to the disk, so it is done in the background.
+        final Context appContext = getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                ForecastSettings.get(appContext);
+                ForecastSyncScheduler.ensureScheduled(appContext);
+            }
+        });
         if (savedInstanceState == null) {
             getSupportFragmentManager().beginTransaction().add(R.id.activity_main, new ForecastFragment()).commit();
         }
@@ -61,10 +72,28 @@ public class MainActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Read the preferred location off the UI thread, like the preload in onCreate, since the
+     * settings may not be loaded yet, and show it once read.
+     */
     private void openPreferredLocationInMap() {
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-        String location = sharedPrefs.getString(getString(R.string.pref_location_key), getString(R.string.pref_location_default));
+        final Context appContext = getApplicationContext();
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... params) {
+                return ForecastSettings.get(appContext).getLocation();
+            }
+
+            @Override
+            protected void onPostExecute(String location) {
+                if (!isFinishing()) {
+                    showLocationInMap(location);
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
 
+    private void showLocationInMap(String location) {
         // Using the URI scheme for showing a location found on a map.  This super-handy
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
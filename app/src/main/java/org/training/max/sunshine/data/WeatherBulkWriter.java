@@ -0,0 +1,362 @@
+package org.training.max.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import org.training.max.sunshine.sync.ForecastBatch;
+
+import java.util.Map;
+
+import static org.training.max.sunshine.data.WeatherContract.ConditionEntry;
+import static org.training.max.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * Upserts the weather rows of a bulk write through statements which are compiled once, when
+ * the writer is created. The values of a row are bound as primitives straight to the
+ * statements, so no SQL is built and nothing is looked up or boxed per row.
+ * <p>
+ * A day which isn't stored yet is inserted. A stored day is only written if one of its values
+ * differs, in place, so it keeps its row ID. A day which didn't change isn't written at all
+ * and is reported as unchanged.
+ * <p>
+ * A writer belongs to the transaction of its rows: it is created after the transaction began
+ * and closed before it ends.
+ */
+final class WeatherBulkWriter {
+
+    private static final String LOG_TAG = WeatherBulkWriter.class.getSimpleName();
+
+    //INSERT OR IGNORE INTO weather (location_id, date, weather_id, min, max, humidity, pressure,
+    //wind, degrees) VALUES (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, ?9)
+    //A stored day is ignored, it is left to the update.
+    private static final String sInsertWeatherSql = "INSERT OR IGNORE INTO "
+            + WeatherEntry.TABLE_NAME
+            + " (" + WeatherEntry.COLUMN_LOC_KEY
+            + ", " + WeatherEntry.COLUMN_DATE
+            + ", " + WeatherEntry.COLUMN_WEATHER_ID
+            + ", " + WeatherEntry.COLUMN_MIN_TEMP
+            + ", " + WeatherEntry.COLUMN_MAX_TEMP
+            + ", " + WeatherEntry.COLUMN_HUMIDITY
+            + ", " + WeatherEntry.COLUMN_PRESSURE
+            + ", " + WeatherEntry.COLUMN_WIND_SPEED
+            + ", " + WeatherEntry.COLUMN_DEGREES
+            + ") VALUES (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, ?9)";
+
+    //UPDATE weather SET weather_id = ?3, min = ?4, ... WHERE location_id = ?1 AND date = ?2
+    //AND (weather_id != ?3 OR min != ?4 OR ...)
+    //Only a day with a different value is written. All columns are NOT NULL, so != compares.
+    private static final String sUpdateWeatherSql = "UPDATE " + WeatherEntry.TABLE_NAME
+            + " SET " + WeatherEntry.COLUMN_WEATHER_ID + " = ?3, "
+            + WeatherEntry.COLUMN_MIN_TEMP + " = ?4, "
+            + WeatherEntry.COLUMN_MAX_TEMP + " = ?5, "
+            + WeatherEntry.COLUMN_HUMIDITY + " = ?6, "
+            + WeatherEntry.COLUMN_PRESSURE + " = ?7, "
+            + WeatherEntry.COLUMN_WIND_SPEED + " = ?8, "
+            + WeatherEntry.COLUMN_DEGREES + " = ?9"
+            + " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ?1"
+            + " AND " + WeatherEntry.COLUMN_DATE + " = ?2"
+            + " AND (" + WeatherEntry.COLUMN_WEATHER_ID + " != ?3"
+            + " OR " + WeatherEntry.COLUMN_MIN_TEMP + " != ?4"
+            + " OR " + WeatherEntry.COLUMN_MAX_TEMP + " != ?5"
+            + " OR " + WeatherEntry.COLUMN_HUMIDITY + " != ?6"
+            + " OR " + WeatherEntry.COLUMN_PRESSURE + " != ?7"
+            + " OR " + WeatherEntry.COLUMN_WIND_SPEED + " != ?8"
+            + " OR " + WeatherEntry.COLUMN_DEGREES + " != ?9)";
+
+    // These indices are tied to sInsertWeatherSql and sUpdateWeatherSql.
+    private static final int BIND_LOC_KEY = 1;
+    private static final int BIND_DATE = 2;
+    private static final int BIND_WEATHER_ID = 3;
+    private static final int BIND_MIN_TEMP = 4;
+    private static final int BIND_MAX_TEMP = 5;
+    private static final int BIND_HUMIDITY = 6;
+    private static final int BIND_PRESSURE = 7;
+    private static final int BIND_WIND_SPEED = 8;
+    private static final int BIND_DEGREES = 9;
+
+    //INSERT OR IGNORE INTO condition (weather_id, short_desc) VALUES (?, ?)
+    private static final String sInsertConditionSql = "INSERT OR IGNORE INTO "
+            + ConditionEntry.TABLE_NAME + " (" + ConditionEntry.COLUMN_WEATHER_ID
+            + ", " + ConditionEntry.COLUMN_SHORT_DESC + ") VALUES (?, ?)";
+
+    //UPDATE condition SET short_desc = ? WHERE weather_id = ? AND short_desc != ?
+    private static final String sUpdateConditionSql = "UPDATE " + ConditionEntry.TABLE_NAME
+            + " SET " + ConditionEntry.COLUMN_SHORT_DESC + " = ? WHERE "
+            + ConditionEntry.COLUMN_WEATHER_ID + " = ? AND "
+            + ConditionEntry.COLUMN_SHORT_DESC + " != ?";
+
+    //SELECT _id FROM weather WHERE location_id = ? AND date = ?
+    private static final String sWeatherRowIdSql = "SELECT " + WeatherEntry._ID
+            + " FROM " + WeatherEntry.TABLE_NAME
+            + " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ?"
+            + " AND " + WeatherEntry.COLUMN_DATE + " = ?";
+
+    // Columns a row must have, as numbers, to be bound to the compiled statements.
+    private static final String[] sWeatherColumns = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mInsertWeather;
+    private final SQLiteStatement mUpdateWeather;
+    private final SQLiteStatement mInsertCondition;
+    private final SQLiteStatement mUpdateCondition;
+
+    // Descriptions already stored by this writer, and whether that changed them, by weather id.
+    private final SparseArray<String> mStoredConditions = new SparseArray<>();
+    private final SparseBooleanArray mChangedConditions = new SparseBooleanArray();
+
+    WeatherBulkWriter(SQLiteDatabase db) {
+        mDb = db;
+        mInsertWeather = db.compileStatement(sInsertWeatherSql);
+        mUpdateWeather = db.compileStatement(sUpdateWeatherSql);
+        mInsertCondition = db.compileStatement(sInsertConditionSql);
+        mUpdateCondition = db.compileStatement(sUpdateConditionSql);
+    }
+
+    /**
+     * Upsert the days of the batch for its location and mark the days which changed the store.
+     * The dates are stored as they are, the batch is normalized already.
+     *
+     * @return count of the changed days
+     */
+    int upsert(ForecastBatch batch) {
+        long locationId = batch.getLocationId();
+        int changedCount = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            boolean conditionChanged =
+                    storeCondition(batch.getWeatherId(i), batch.getDescription(i));
+            boolean changed = upsert(locationId, batch.getDate(i), batch.getWeatherId(i),
+                    batch.getLow(i), batch.getHigh(i), batch.getHumidity(i),
+                    batch.getPressure(i), batch.getWindSpeed(i), batch.getWindDirection(i));
+            batch.setChanged(i, changed || conditionChanged);
+            if (changed || conditionChanged) {
+                changedCount++;
+            }
+        }
+        return changedCount;
+    }
+
+    /**
+     * Upsert a row given as values, its date is normalized already. The description goes to
+     * the condition table. A row which lacks a weather column only writes the columns it has,
+     * see {@link #upsertPartial}.
+     *
+     * @return 'true' if the row changed the store
+     */
+    boolean upsert(ContentValues values) {
+        Integer weatherId = values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+        ContentValues weatherValues = values;
+        boolean conditionChanged = false;
+        if (values.containsKey(WeatherEntry.COLUMN_SHORT_DESC)) {
+            String description = values.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+            if (weatherId != null && description != null) {
+                conditionChanged = storeCondition(weatherId, description);
+            }
+            weatherValues = new ContentValues(values);
+            weatherValues.remove(WeatherEntry.COLUMN_SHORT_DESC);
+        }
+
+        if (weatherValues.size() != sWeatherColumns.length || !hasWeatherColumns(weatherValues)) {
+            return upsertPartial(weatherValues) || conditionChanged;
+        }
+        boolean changed = upsert(weatherValues.getAsLong(WeatherEntry.COLUMN_LOC_KEY),
+                weatherValues.getAsLong(WeatherEntry.COLUMN_DATE),
+                weatherId,
+                weatherValues.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                weatherValues.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                weatherValues.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                weatherValues.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                weatherValues.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                weatherValues.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        return changed || conditionChanged;
+    }
+
+    /**
+     * @return 'true' if the day was inserted or updated, 'false' if the stored day is equal or
+     * the row couldn't be written
+     */
+    private boolean upsert(long locationId, long date, int weatherId, double low, double high,
+                           double humidity, double pressure, double windSpeed, double degrees) {
+        try {
+            bindWeather(mInsertWeather, locationId, date, weatherId, low, high, humidity,
+                    pressure, windSpeed, degrees);
+            if (mInsertWeather.executeInsert() != -1) {
+                return true;
+            }
+            bindWeather(mUpdateWeather, locationId, date, weatherId, low, high, humidity,
+                    pressure, windSpeed, degrees);
+            return mUpdateWeather.executeUpdateDelete() > 0;
+        } catch (SQLException e) {
+            // Like SQLiteDatabase.insert, a bad row doesn't fail the whole bulk write.
+            Log.e(LOG_TAG, "Error writing weather of " + locationId + " for " + date, e);
+            return false;
+        }
+    }
+
+    /**
+     * Upsert a row which doesn't have exactly the weather columns as numbers, so it can't be
+     * bound to the compiled statements. It takes the same way with statements built for its
+     * columns: INSERT OR IGNORE, then an UPDATE of the stored day if one of the values
+     * differs. A stored day is thus written in place and keeps its row ID. A row without its
+     * day or with a null value can't be matched, it is inserted the way SQLiteDatabase does
+     * it, which also reports what is wrong with it.
+     *
+     * @return 'true' if the row was inserted or changed the stored day
+     */
+    private boolean upsertPartial(ContentValues values) {
+        Long locationId = values.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null || hasNullValue(values)) {
+            return mDb.insert(WeatherEntry.TABLE_NAME, null, values) != -1;
+        }
+        if (mDb.insertWithOnConflict(WeatherEntry.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+            return true;
+        }
+
+        ContentValues updateValues = new ContentValues(values);
+        updateValues.remove(WeatherEntry.COLUMN_LOC_KEY);
+        updateValues.remove(WeatherEntry.COLUMN_DATE);
+        if (updateValues.size() == 0) {
+            return false;
+        }
+        // ... WHERE location_id = ? AND date = ? AND (column != ? OR ...)
+        StringBuilder selection = new StringBuilder(WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                + WeatherEntry.COLUMN_DATE + " = ? AND (");
+        String[] selectionArgs = new String[2 + updateValues.size()];
+        selectionArgs[0] = Long.toString(locationId);
+        selectionArgs[1] = Long.toString(date);
+        int argIndex = 2;
+        for (Map.Entry<String, Object> column : updateValues.valueSet()) {
+            if (argIndex > 2) {
+                selection.append(" OR ");
+            }
+            selection.append(column.getKey()).append(" != ?");
+            selectionArgs[argIndex++] = toSelectionArg(column.getValue());
+        }
+        selection.append(')');
+        try {
+            return mDb.update(WeatherEntry.TABLE_NAME, updateValues, selection.toString(),
+                    selectionArgs) > 0;
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error writing weather of " + locationId + " for " + date, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return row ID of the stored day of the values, -1 if they have no day or it isn't stored
+     */
+    long getRowId(ContentValues values) {
+        Long locationId = values.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null) {
+            return -1;
+        }
+        try {
+            return DatabaseUtils.longForQuery(mDb, sWeatherRowIdSql,
+                    new String[]{Long.toString(locationId), Long.toString(date)});
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    private static void bindWeather(SQLiteStatement statement, long locationId, long date,
+                                    int weatherId, double low, double high, double humidity,
+                                    double pressure, double windSpeed, double degrees) {
+        statement.bindLong(BIND_LOC_KEY, locationId);
+        statement.bindLong(BIND_DATE, date);
+        statement.bindLong(BIND_WEATHER_ID, weatherId);
+        statement.bindDouble(BIND_MIN_TEMP, low);
+        statement.bindDouble(BIND_MAX_TEMP, high);
+        statement.bindDouble(BIND_HUMIDITY, humidity);
+        statement.bindDouble(BIND_PRESSURE, pressure);
+        statement.bindDouble(BIND_WIND_SPEED, windSpeed);
+        statement.bindDouble(BIND_DEGREES, degrees);
+    }
+
+    /**
+     * Store the description of a weather id, once per writer. The row is only written if it
+     * is new or its description changed.
+     *
+     * @return 'true' if the description of the weather id is new or changed, so every day of
+     * the condition reads differently than before
+     */
+    private boolean storeCondition(int weatherId, String description) {
+        if (description.equals(mStoredConditions.get(weatherId))) {
+            return mChangedConditions.get(weatherId);
+        }
+        mInsertCondition.bindLong(1, weatherId);
+        mInsertCondition.bindString(2, description);
+        boolean changed = mInsertCondition.executeInsert() != -1;
+
+        if (!changed) {
+            mUpdateCondition.bindString(1, description);
+            mUpdateCondition.bindLong(2, weatherId);
+            mUpdateCondition.bindString(3, description);
+            changed = mUpdateCondition.executeUpdateDelete() > 0;
+        }
+
+        mStoredConditions.put(weatherId, description);
+        mChangedConditions.put(weatherId, changed);
+        return changed;
+    }
+
+    private static boolean hasNullValue(ContentValues values) {
+        for (Map.Entry<String, Object> column : values.valueSet()) {
+            if (column.getValue() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A value as text to compare with a stored one. The columns have a numeric affinity, so
+     * SQLite compares the text as a number. A float is widened like it is when it is stored.
+     */
+    private static String toSelectionArg(Object value) {
+        if (value instanceof Float) {
+            return Double.toString((Float) value);
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        }
+        return value.toString();
+    }
+
+    private static boolean hasWeatherColumns(ContentValues values) {
+        for (String column : sWeatherColumns) {
+            if (!(values.get(column) instanceof Number)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Release the compiled statements.
+     */
+    void close() {
+        mInsertWeather.close();
+        mUpdateWeather.close();
+        mInsertCondition.close();
+        mUpdateCondition.close();
+    }
+}
@@ -4,7 +4,10 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import org.training.max.sunshine.util.DayMath;
+
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -33,10 +36,7 @@ public class WeatherContract {
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
         // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return DayMath.normalizeDate(startDate, TimeZone.getDefault());
     }
 
     /*
@@ -60,6 +60,13 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Time of the last successful sync of the location in milliseconds, 0 if never synced.
+        public static final String COLUMN_LAST_SYNCED = "last_synced";
+
+        // How long the forecast of the location is fresh after a sync, in milliseconds.
+        // It adapts to how much recent syncs changed the stored forecast.
+        public static final String COLUMN_FRESHNESS_TTL = "freshness_ttl";
+
         public static final Uri CONTENT_URI =
                 BASE_CONTENT_URI.buildUpon().appendPath(PATH_LOCATION).build();
 
@@ -73,6 +80,22 @@ public class WeatherContract {
         }
     }
 
+    /*
+        Inner class that defines the table contents of the condition table. It holds the short
+        description of every OWM weather ID once, the weather rows only refer to it by ID.
+        The provider joins it into the weather queries, so it has no URI of its own.
+     */
+    public static final class ConditionEntry {
+
+        public static final String TABLE_NAME = "condition";
+
+        // Weather id as returned by API, the key of the table.
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+
+        // Short description of the weather id, as provided by API, e.g "Clear".
+        public static final String COLUMN_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+    }
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -86,7 +109,8 @@ public class WeatherContract {
         public static final String COLUMN_WEATHER_ID = "weather_id";
 
         // Short description and long description of the weather, as provided by API.
-        // e.g "clear" vs "sky is clear".
+        // e.g "clear" vs "sky is clear". The short one is stored in the condition table
+        // and joined in by weather id, it can be read and written as a column of the weather.
         public static final String COLUMN_SHORT_DESC = "short_desc";
 
         // Min and max temperatures for the day (stored as floats)
@@ -118,11 +142,8 @@ public class WeatherContract {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
-        /*
-            Student: Fill in this buildWeatherLocation function
-         */
         public static Uri buildWeatherLocation(String locationSetting) {
-            return null;
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
         }
 
         public static Uri buildWeatherLocationWithStartDate(
@@ -19,6 +19,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import static org.training.max.sunshine.data.WeatherContract.ConditionEntry;
 import static org.training.max.sunshine.data.WeatherContract.LocationEntry;
 import static org.training.max.sunshine.data.WeatherContract.WeatherEntry;
 
@@ -28,7 +29,7 @@ import static org.training.max.sunshine.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
@@ -43,7 +44,15 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL);";
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_LAST_SYNCED + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_FRESHNESS_TTL + " INTEGER NOT NULL DEFAULT 0);";
+
+        // Descriptions are fully determined by the weather id, so they are stored once per id
+        // and the weather rows keep to fixed-width numeric columns.
+        final String SQL_CREATE_CONDITION_TABLE = "CREATE TABLE " + ConditionEntry.TABLE_NAME +
+                " (" + ConditionEntry.COLUMN_WEATHER_ID + " INTEGER PRIMARY KEY, " +
+                ConditionEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL);";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
                 // Why AutoIncrement here, and not above?
@@ -56,7 +65,6 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 // the ID of the location entry associated with this weather data
                 WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
                 WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
 
                 WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
@@ -72,11 +80,13 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
 
                 // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
+                // per location, it's created a UNIQUE constraint. A refresh updates the stored
+                // days in place rather than replacing them, so they keep their IDs.
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+                WeatherEntry.COLUMN_LOC_KEY + "));";
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_CONDITION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
     }
 
@@ -90,6 +100,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ConditionEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
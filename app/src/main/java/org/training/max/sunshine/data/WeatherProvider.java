@@ -24,6 +24,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import org.training.max.sunshine.sync.ForecastBatch;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
@@ -37,6 +39,17 @@ public class WeatherProvider extends ContentProvider {
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
+    //The description of the weather is joined in from the condition table, which looks like
+    //LEFT JOIN condition USING (weather_id)
+    //USING keeps a single weather_id column, so it can still be selected without a table name.
+    private static final String sConditionJoin =
+            " LEFT JOIN " + WeatherContract.ConditionEntry.TABLE_NAME +
+                    " USING (" + WeatherContract.ConditionEntry.COLUMN_WEATHER_ID + ")";
+
+    //weather LEFT JOIN condition USING (weather_id)
+    private static final String sWeatherTables =
+            WeatherContract.WeatherEntry.TABLE_NAME + sConditionJoin;
+
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
         
@@ -48,9 +61,15 @@ public class WeatherProvider extends ContentProvider {
                         " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
-                        "." + WeatherContract.LocationEntry._ID);
+                        "." + WeatherContract.LocationEntry._ID +
+                        sConditionJoin);
     }
 
+    //weather_id = ? AND short_desc != ?
+    private static final String sChangedConditionSelection =
+            WeatherContract.ConditionEntry.COLUMN_WEATHER_ID + " = ? AND " +
+                    WeatherContract.ConditionEntry.COLUMN_SHORT_DESC + " != ? ";
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -109,22 +128,21 @@ public class WeatherProvider extends ContentProvider {
     }
 
     /*
-        Students: Here is where you need to create the UriMatcher. This UriMatcher will
-        match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
-        and LOCATION integer constants defined above.  You can test this by uncommenting the
-        testUriMatcher test within TestUriMatcher.
+        This UriMatcher will match each URI to the WEATHER, WEATHER_WITH_LOCATION,
+        WEATHER_WITH_LOCATION_AND_DATE, and LOCATION integer constants defined above.
      */
     static UriMatcher buildUriMatcher() {
-        // 1) The code passed into the constructor represents the code to return for the root
-        // URI.  It's common to use NO_MATCH as the code for this case. Add the constructor below.
-
+        // The code passed into the constructor represents the code to return for the root URI.
+        final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
+        final String authority = WeatherContract.CONTENT_AUTHORITY;
 
-        // 2) Use the addURI function to match each of the types.  Use the constants from
-        // WeatherContract to help define the types to the UriMatcher.
+        // For each type of URI you want to add, create a corresponding code.
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
-
-        // 3) Return the new matcher!
-        return null;
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        return matcher;
     }
 
     /*
@@ -137,11 +155,6 @@ public class WeatherProvider extends ContentProvider {
         return true;
     }
 
-    /*
-        Students: Here's where you'll code the getType function that uses the UriMatcher.  You can
-        test this by uncommenting testGetType in TestProvider.
-
-     */
     @Override
     public String getType(Uri uri) {
 
@@ -149,9 +162,9 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
 
         switch (match) {
-            // Student: Uncomment and fill out these two cases
-//            case WEATHER_WITH_LOCATION_AND_DATE:
-//            case WEATHER_WITH_LOCATION:
+            case WEATHER_WITH_LOCATION_AND_DATE:
+                return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
+            case WEATHER_WITH_LOCATION:
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
@@ -181,12 +194,28 @@ public class WeatherProvider extends ContentProvider {
             }
             // "weather"
             case WEATHER: {
-                retCursor = null;
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        sWeatherTables,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
                 break;
             }
             // "location"
             case LOCATION: {
-                retCursor = null;
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
                 break;
             }
 
@@ -197,9 +226,42 @@ public class WeatherProvider extends ContentProvider {
         return retCursor;
     }
 
-    /*
-        Student: Add the ability to insert Locations to the implementation of this function.
+    /**
+     * Take the description out of weather values. It is stored in the condition table for the
+     * weather id of the values, a description without weather id can't be stored.
+     *
+     * @return the values to write to the weather table
+     */
+    private static ContentValues splitCondition(SQLiteDatabase db, ContentValues values) {
+        if (!values.containsKey(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)) {
+            return values;
+        }
+        ContentValues weatherValues = new ContentValues(values);
+        String description =
+                weatherValues.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+        weatherValues.remove(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+
+        Integer weatherId = weatherValues.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        if (weatherId != null && description != null) {
+            storeCondition(db, weatherId, description);
+        }
+        return weatherValues;
+    }
+
+    /**
+     * Store the description of a weather id. The row is only written if it is new or its
+     * description changed.
      */
+    private static void storeCondition(SQLiteDatabase db, int weatherId, String description) {
+        ContentValues conditionValues = new ContentValues(2);
+        conditionValues.put(WeatherContract.ConditionEntry.COLUMN_WEATHER_ID, weatherId);
+        conditionValues.put(WeatherContract.ConditionEntry.COLUMN_SHORT_DESC, description);
+        db.insertWithOnConflict(WeatherContract.ConditionEntry.TABLE_NAME, null, conditionValues,
+                SQLiteDatabase.CONFLICT_IGNORE);
+        db.update(WeatherContract.ConditionEntry.TABLE_NAME, conditionValues,
+                sChangedConditionSelection, new String[]{Integer.toString(weatherId), description});
+    }
+
     @Override
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -209,13 +271,36 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                // A single day is upserted like the days of a bulk insert, so a stored day is
+                // updated in place and keeps its row ID.
+                long _id;
+                db.beginTransaction();
+                WeatherBulkWriter writer = null;
+                try {
+                    writer = new WeatherBulkWriter(db);
+                    writer.upsert(values);
+                    _id = writer.getRowId(values);
+                    db.setTransactionSuccessful();
+                } finally {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                    db.endTransaction();
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case LOCATION: {
+                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -225,18 +310,29 @@ public class WeatherProvider extends ContentProvider {
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
-        // Student: Start by getting a writable database
-
-        // Student: Use the uriMatcher to match the WEATHER and LOCATION URI's we are going to
-        // handle.  If it doesn't match these, throw an UnsupportedOperationException.
-
-        // Student: A null value deletes all rows.  In my implementation of this, I only notified
-        // the uri listeners (using the content resolver) if the rowsDeleted != 0 or the selection
-        // is null.
-        // Oh, and you should notify the listeners here.
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final int match = sUriMatcher.match(uri);
+        int rowsDeleted;
 
-        // Student: return the actual rows deleted
-        return 0;
+        // A null selection deletes all rows, "1" makes delete return the count of those rows.
+        if ( null == selection ) selection = "1";
+        switch (match) {
+            case WEATHER:
+                rowsDeleted = db.delete(
+                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case LOCATION:
+                rowsDeleted = db.delete(
+                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        // Because a null selection deletes all rows
+        if (rowsDeleted != 0) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return rowsDeleted;
     }
 
     private void normalizeDate(ContentValues values) {
@@ -250,11 +346,35 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        // Student: This is a lot like the delete function.  We return the number of rows impacted
-        // by the update.
-        return 0;
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final int match = sUriMatcher.match(uri);
+        int rowsUpdated;
+
+        switch (match) {
+            case WEATHER:
+                normalizeDate(values);
+                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME,
+                        splitCondition(db, values), selection, selectionArgs);
+                break;
+            case LOCATION:
+                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
+                        selectionArgs);
+                break;
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        if (rowsUpdated != 0) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return rowsUpdated;
     }
 
+    /**
+     * Upsert the weather rows. Days which are already stored are only written if a value
+     * differs, and observers are only notified if a day changed.
+     *
+     * @return count of the days which were new or changed
+     */
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -263,25 +383,62 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                WeatherBulkWriter writer = null;
                 try {
+                    writer = new WeatherBulkWriter(db);
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
+                        if (writer.upsert(value)) {
                             returnCount++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
+                    if (writer != null) {
+                        writer.close();
+                    }
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                if (returnCount != 0) {
+                    getContext().getContentResolver().notifyChange(uri, null);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Upsert the days of a batch for its location. The values are bound straight from the
+     * batch, which only the app's own sync can hand over, as the provider runs in its process.
+     * Days which are already stored are only written if a value differs, the changed ones are
+     * marked in the batch. Observers are only notified if a day changed.
+     *
+     * @param batch normalized batch, its dates are stored as they are
+     * @return dates of the days which were new or changed, empty if the store didn't change
+     */
+    public long[] upsert(ForecastBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        int changedCount;
+        WeatherBulkWriter writer = null;
+        try {
+            writer = new WeatherBulkWriter(db);
+            changedCount = writer.upsert(batch);
+            db.setTransactionSuccessful();
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            db.endTransaction();
+        }
+        if (changedCount != 0) {
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+        return batch.getChangedDates();
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,37 @@
+package org.training.max.sunshine.net;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Checks a {@link CancellationToken} before every read, so an abandoned refresh stops reading
+ * the body at the next chunk.
+ */
+class CancellableInputStream extends FilterInputStream {
+
+    private final CancellationToken mToken;
+
+    CancellableInputStream(InputStream in, CancellationToken token) {
+        super(in);
+        mToken = token;
+    }
+
+    @Override
+    public int read() throws IOException {
+        mToken.throwIfCancelled();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        mToken.throwIfCancelled();
+        return super.read(buffer, offset, count);
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        mToken.throwIfCancelled();
+        return super.skip(count);
+    }
+}
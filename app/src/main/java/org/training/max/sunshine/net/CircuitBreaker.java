@@ -0,0 +1,105 @@
+package org.training.max.sunshine.net;
+
+import android.os.SystemClock;
+
+/**
+ * Stops requests to an upstream which keeps failing.
+ * <p>
+ * After a number of consecutive failures the circuit opens and requests fail fast for a while.
+ * Then a single trial request is let through: if it succeeds the circuit closes again,
+ * otherwise it stays open for another period.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Default count of consecutive failures which opens the circuit.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time the circuit stays open before a trial request.
+     */
+    public static final long DEFAULT_OPEN_MILLIS = 60 * 1000;
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+
+    private int mConsecutiveFailures;
+    // Time (elapsed realtime) until which requests fail fast, 0 if the circuit is closed.
+    private long mOpenUntil;
+    private boolean mTrialInFlight;
+
+    /**
+     * @param failureThreshold count of consecutive failures which opens the circuit
+     * @param openMillis       time the circuit stays open before a trial request
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+    }
+
+    /**
+     * @return breaker with the default values
+     */
+    public static CircuitBreaker createDefault() {
+        return new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * @return 'true' if a request may be sent now. While the circuit is half open only one
+     * trial request is allowed, it must be followed by {@link #onSuccess()} or {@link #onFailure}.
+     */
+    public synchronized boolean allowRequest() {
+        if (mOpenUntil == 0) {
+            return true;
+        }
+        if (SystemClock.elapsedRealtime() < mOpenUntil || mTrialInFlight) {
+            return false;
+        }
+        mTrialInFlight = true;
+        return true;
+    }
+
+    /**
+     * The upstream answered, close the circuit.
+     */
+    public synchronized void onSuccess() {
+        mConsecutiveFailures = 0;
+        mOpenUntil = 0;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * The request was abandoned by the caller before the upstream answered, which says nothing
+     * about its health. A trial request may be sent again.
+     */
+    public synchronized void onAbandoned() {
+        mTrialInFlight = false;
+    }
+
+    /**
+     * The upstream failed.
+     *
+     * @param retryAfterMillis delay asked by the upstream, -1 if none. The circuit stays open
+     *                         at least that long.
+     */
+    public synchronized void onFailure(long retryAfterMillis) {
+        mConsecutiveFailures++;
+        if (mTrialInFlight || mConsecutiveFailures >= mFailureThreshold || retryAfterMillis > 0) {
+            long openMillis = Math.max(mOpenMillis, retryAfterMillis);
+            if (mConsecutiveFailures < mFailureThreshold && !mTrialInFlight) {
+                // A single Retry-After only holds requests back as long as the server asked.
+                openMillis = retryAfterMillis;
+            }
+            mOpenUntil = SystemClock.elapsedRealtime() + openMillis;
+        }
+        mTrialInFlight = false;
+    }
+
+    /**
+     * @return 'true' if requests currently fail fast
+     */
+    public synchronized boolean isOpen() {
+        return mOpenUntil != 0 && SystemClock.elapsedRealtime() < mOpenUntil;
+    }
+}
@@ -0,0 +1,13 @@
+package org.training.max.sunshine.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the upstream is considered unhealthy.
+ */
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String url) {
+        super("OpenWeatherMap is unhealthy, not requesting " + url);
+    }
+}
@@ -0,0 +1,56 @@
+package org.training.max.sunshine.net;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Network interceptor which counts how many requests were sent over a new connection and how
+ * many reused a pooled, kept-alive one.
+ */
+public class ConnectionStats implements Interceptor {
+
+    // Connections which already carried a request. Weak, so closed connections are dropped.
+    private final Set<Connection> mSeenConnections =
+            Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>());
+
+    private long mNewConnections;
+    private long mReusedConnections;
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Connection connection = chain.connection();
+        synchronized (this) {
+            if (connection == null || mSeenConnections.add(connection)) {
+                mNewConnections++;
+            } else {
+                mReusedConnections++;
+            }
+        }
+        return chain.proceed(chain.request());
+    }
+
+    /**
+     * @return count of requests which needed a new connection (TCP and TLS setup)
+     */
+    public synchronized long getNewConnections() {
+        return mNewConnections;
+    }
+
+    /**
+     * @return count of requests which were sent over a pooled connection
+     */
+    public synchronized long getReusedConnections() {
+        return mReusedConnections;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "new connections: " + mNewConnections + ", reused: " + mReusedConnections;
+    }
+}
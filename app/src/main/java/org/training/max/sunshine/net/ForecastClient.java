@@ -0,0 +1,404 @@
+package org.training.max.sunshine.net;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.training.max.sunshine.BuildConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Performs forecast requests to OpenWeatherMap.
+ * <p>
+ * All requests of the app go through one shared client. Requests are sent by a
+ * {@link ForecastTransport}, by default an {@link OkHttpForecastTransport} which keeps
+ * connections alive between requests and locations.
+ * <p>
+ * Responses are kept in a {@link ForecastDiskCache}: while an entry is fresh according to the
+ * Cache-Control max-age of its response it is served without touching the network. If the
+ * network fails transiently, an entry which expired not long ago is served instead of the
+ * error, marked as stale.
+ * <p>
+ * Network requests are conditional: validators of the last stored response are sent with
+ * If-None-Match/If-Modified-Since, so the server answers with a small 304 response
+ * when the forecast hasn't changed since then. Bodies are requested compressed and inflated
+ * while they are streamed to the parser.
+ * <p>
+ * Transient failures are retried a few times with jittered exponential backoff, honoring
+ * Retry-After. While OWM keeps failing a {@link CircuitBreaker} makes requests fail fast, so
+ * callers fall back to the stored forecast instead of piling up on a struggling upstream.
+ * <p>
+ * Every request sent to the network, retries included, takes a token from a
+ * {@link TokenBucketRateLimiter} first, so the app stays under the quota of its API key.
+ */
+public class ForecastClient {
+
+    private static final String LOG_TAG = ForecastClient.class.getSimpleName();
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final String HEADER_DATE = "Date";
+
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    private static final String CACHE_DIRECTORY = "forecast-responses";
+
+    /**
+     * Default byte budget of the response cache. A 16-day forecast is around 5 KB.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 512 * 1024;
+
+    /**
+     * Default count of idle connections kept alive for reuse. OWM is a single host, so this
+     * matches the count of locations which are synced in parallel.
+     */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 4;
+
+    /**
+     * Default time an idle connection is kept alive for reuse.
+     */
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 5 * 60;
+
+    // An entry which expired longer ago than that isn't served in place of a failed request.
+    private static final long MAX_STALE_MILLIS = 6 * 60 * 60 * 1000L;
+
+    private static ForecastClient sInstance;
+
+    private final ValidatorStore mValidatorStore;
+    private final ForecastDiskCache mCache;
+    private final ForecastTransport mTransport;
+    private final RetryPolicy mRetryPolicy;
+    private final CircuitBreaker mCircuitBreaker;
+    private final TokenBucketRateLimiter mRateLimiter;
+
+    /**
+     * @param context            any context, the application one is kept
+     * @param cacheSize          byte budget of the response cache
+     * @param transport      sender of the HTTP requests
+     * @param retryPolicy    retries of transient failures
+     * @param circuitBreaker breaker which stops requests while OWM is unhealthy
+     * @param rateLimiter    limiter which every network request goes through
+     */
+    public ForecastClient(Context context, long cacheSize, ForecastTransport transport,
+                          RetryPolicy retryPolicy, CircuitBreaker circuitBreaker,
+                          TokenBucketRateLimiter rateLimiter) {
+        Context appContext = context.getApplicationContext();
+        mTransport = transport;
+        mRetryPolicy = retryPolicy;
+        mCircuitBreaker = circuitBreaker;
+        mRateLimiter = rateLimiter;
+        mValidatorStore = new ValidatorStore(appContext);
+        mCache = new ForecastDiskCache(new File(appContext.getCacheDir(), CACHE_DIRECTORY), cacheSize);
+    }
+
+    /**
+     * @param context any context
+     * @return client shared by all forecast requests of the app
+     */
+    public static synchronized ForecastClient getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastClient(context, DEFAULT_CACHE_SIZE,
+                    new OkHttpForecastTransport(DEFAULT_MAX_IDLE_CONNECTIONS,
+                            DEFAULT_KEEP_ALIVE_SECONDS),
+                    RetryPolicy.createDefault(), CircuitBreaker.createDefault(),
+                    // The quota belongs to the API key, so its limits are built in with it.
+                    new TokenBucketRateLimiter(BuildConfig.OPEN_WEATHER_MAP_RATE_BURST,
+                            BuildConfig.OPEN_WEATHER_MAP_RATE_PER_MINUTE));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Replace the shared client, e.g. with one whose transport talks to a local stand-in server.
+     *
+     * @param client new shared client, 'null' to go back to the default one
+     */
+    public static synchronized void setInstance(ForecastClient client) {
+        sInstance = client;
+    }
+
+    /**
+     * Request the forecast for a user who is waiting for it. The caller must close the returned
+     * response.
+     *
+     * @see #fetch(String, int, CancellationToken)
+     */
+    public ForecastResponse fetch(String url) throws IOException {
+        return fetch(url, TokenBucketRateLimiter.PRIORITY_INTERACTIVE, CancellationToken.NONE);
+    }
+
+    /**
+     * Request the forecast. The caller must close the returned response.
+     *
+     * @param url      URL built by {@link org.training.max.sunshine.util.BuildUtils#buildOpenWeatherMapUrlString}
+     * @param priority priority of the request while it waits for the rate limit, one of
+     *                 the TokenBucketRateLimiter.PRIORITY_* values
+     * @param token    cancellation and deadline of the refresh. It is also checked while
+     *                 the body of the response is read.
+     * @return response which is either "not modified" or carries the forecast body, which is
+     * stale if it stands in for a request which failed transiently
+     * @throws CancelledException if the refresh was cancelled or its deadline passed
+     * @throws IOException if the request failed or the server answered with an error,
+     *                     and there was no recent cached response to fall back to
+     */
+    public ForecastResponse fetch(String url, int priority, CancellationToken token)
+            throws IOException {
+        ForecastDiskCache.Entry cached = mCache.get(url);
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            try {
+                return ForecastResponse.cached(cached.openBody(), cached.getFetchedAt());
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Cached response for " + url + " is unreadable", e);
+                mCache.remove(url);
+                cached = null;
+            }
+        }
+
+        try {
+            return fetchWithRetries(url, priority, token);
+        } catch (IOException e) {
+            if (cached == null || e instanceof CancelledException || !isTransient(e)
+                    || !cached.isUsableWhenStale(System.currentTimeMillis(), MAX_STALE_MILLIS)) {
+                throw e;
+            }
+            // A stale forecast is better than none while the network is flaky.
+            Log.w(LOG_TAG, "Serving stale cached response for " + url, e);
+            return ForecastResponse.stale(cached.openBody(), cached.getFetchedAt());
+        }
+    }
+
+    /**
+     * @return 'true' if the failure may go away by itself, e.g. the network is down or OWM is
+     * overloaded. An error answer such as an unknown city won't.
+     */
+    private static boolean isTransient(IOException e) {
+        return !(e instanceof HttpStatusException) || ((HttpStatusException) e).isTransient();
+    }
+
+    /**
+     * Send the request, retrying transient failures with backoff. Requests aren't sent at all
+     * while the circuit breaker considers OWM unhealthy.
+     */
+    private ForecastResponse fetchWithRetries(String url, int priority, CancellationToken token)
+            throws IOException {
+        int failedAttempts = 0;
+        while (true) {
+            // Don't wait for a token only to find out the request can't be sent anyway.
+            if (mCircuitBreaker.isOpen()) {
+                throw new CircuitOpenException(url);
+            }
+            mRateLimiter.acquire(priority, token);
+            if (!mCircuitBreaker.allowRequest()) {
+                throw new CircuitOpenException(url);
+            }
+            try {
+                ForecastResponse response = fetchFromNetwork(url, token);
+                mCircuitBreaker.onSuccess();
+                return response;
+            } catch (IOException e) {
+                if (token.isCancelled()) {
+                    // Failed because the refresh was abandoned, not because of the upstream.
+                    mCircuitBreaker.onAbandoned();
+                    token.throwIfCancelled();
+                }
+                long retryAfterMillis = -1;
+                if (e instanceof HttpStatusException) {
+                    HttpStatusException statusException = (HttpStatusException) e;
+                    if (!statusException.isTransient()) {
+                        // The upstream is healthy, it's the request which is wrong.
+                        mCircuitBreaker.onSuccess();
+                        throw e;
+                    }
+                    retryAfterMillis = statusException.getRetryAfterMillis();
+                }
+                mCircuitBreaker.onFailure(retryAfterMillis);
+
+                failedAttempts++;
+                long delayMillis = mRetryPolicy.getDelayMillis(failedAttempts, retryAfterMillis);
+                if (delayMillis < 0) {
+                    throw e;
+                }
+                Log.w(LOG_TAG, "Attempt " + failedAttempts + " for " + url + " failed, retrying in "
+                        + delayMillis + " ms: " + e.getMessage());
+                if (delayMillis >= token.getRemainingMillis()) {
+                    // The next attempt couldn't finish before the deadline anyway.
+                    throw e;
+                }
+                token.sleep(delayMillis);
+            }
+        }
+    }
+
+    private ForecastResponse fetchFromNetwork(String url, CancellationToken token)
+            throws IOException {
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                // Asking for the encoding ourselves turns off the transparent decompression
+                // of the HTTP client, so the compressed size can be seen and counted.
+                .header(HEADER_ACCEPT_ENCODING, ENCODING_GZIP + ", " + ENCODING_DEFLATE);
+
+        String eTag = mValidatorStore.getETag(url);
+        if (eTag != null) {
+            request.header(HEADER_IF_NONE_MATCH, eTag);
+        }
+        String lastModified = mValidatorStore.getLastModified(url);
+        if (lastModified != null) {
+            request.header(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+
+        Response response = mTransport.execute(request.build(), token);
+        try {
+            int status = response.code();
+            CacheControl cacheControl = CacheControl.parse(response.header(HEADER_CACHE_CONTROL));
+            long expiresAt = System.currentTimeMillis() + cacheControl.maxAgeMillis;
+            long fetchedAt = parseDate(response);
+
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                mCache.updateExpiry(url, expiresAt);
+                return ForecastResponse.notModified(response, fetchedAt);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new HttpStatusException(status, parseRetryAfter(response), url);
+            }
+
+            CountingInputStream wireBody = new CountingInputStream(
+                    new CancellableInputStream(response.body().byteStream(), token));
+            CountingInputStream body = new CountingInputStream(
+                    decode(wireBody, response.header(HEADER_CONTENT_ENCODING)));
+
+            // The cache keeps the decoded body, so a hit doesn't have to inflate it again.
+            InputStream cachedBody = body;
+            if (cacheControl.noStore) {
+                mCache.remove(url);
+            } else {
+                cachedBody = mCache.put(url, expiresAt, fetchedAt, body);
+            }
+            return ForecastResponse.ok(response, cachedBody, wireBody, body, url,
+                    response.header(HEADER_ETAG),
+                    response.header(HEADER_LAST_MODIFIED),
+                    mValidatorStore, fetchedAt);
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return sender of the HTTP requests of this client
+     */
+    public ForecastTransport getTransport() {
+        return mTransport;
+    }
+
+    /**
+     * @return time the server served the response according to its Date header, or the current
+     * time if it has none
+     */
+    private static long parseDate(Response response) {
+        Date date = response.headers().getDate(HEADER_DATE);
+        return date != null ? date.getTime() : System.currentTimeMillis();
+    }
+
+    /**
+     * @return delay asked by the Retry-After header in milliseconds, -1 if there is none.
+     * The header holds either a count of seconds or an HTTP date.
+     */
+    private static long parseRetryAfter(Response response) {
+        String retryAfter = response.header(HEADER_RETRY_AFTER);
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate(HEADER_RETRY_AFTER);
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+
+    /**
+     * Wrap the body into a decompressing stream according to its Content-Encoding.
+     * Data is inflated while it is read, the compressed body is never held in memory.
+     */
+    private static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return body;
+        }
+        contentEncoding = contentEncoding.trim().toLowerCase();
+        if (ENCODING_GZIP.equals(contentEncoding)) {
+            return new GZIPInputStream(body);
+        }
+        if (ENCODING_DEFLATE.equals(contentEncoding)) {
+            return new InflaterInputStream(body);
+        }
+        if (!"identity".equals(contentEncoding)) {
+            throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+        }
+        return body;
+    }
+
+    /**
+     * Drop the validators and the cached response of the URL. Used when the local store
+     * doesn't hold the data any more which a 304 response would refer to.
+     *
+     * @param url request URL
+     */
+    public void forgetValidators(String url) {
+        mValidatorStore.remove(url);
+        mCache.remove(url);
+    }
+
+    /**
+     * The parts of the Cache-Control response header which matter for the forecast.
+     */
+    static final class CacheControl {
+        final long maxAgeMillis;
+        final boolean noStore;
+
+        private CacheControl(long maxAgeMillis, boolean noStore) {
+            this.maxAgeMillis = maxAgeMillis;
+            this.noStore = noStore;
+        }
+
+        static CacheControl parse(String header) {
+            long maxAgeSeconds = 0;
+            boolean noCache = false;
+            boolean noStore = false;
+            if (header != null) {
+                for (String directive : header.split(",")) {
+                    directive = directive.trim().toLowerCase();
+                    if (directive.equals("no-store")) {
+                        noStore = true;
+                    } else if (directive.equals("no-cache")) {
+                        noCache = true;
+                    } else if (directive.startsWith("max-age=")) {
+                        try {
+                            maxAgeSeconds = Math.max(0, Long.parseLong(
+                                    directive.substring("max-age=".length()).replace("\"", "")));
+                        } catch (NumberFormatException e) {
+                            maxAgeSeconds = 0;
+                        }
+                    }
+                }
+            }
+            // A no-cache response must be revalidated, so it is stale from the start.
+            return new CacheControl(noCache ? 0 : maxAgeSeconds * 1000, noStore);
+        }
+    }
+}
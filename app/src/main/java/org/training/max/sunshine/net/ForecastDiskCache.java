@@ -0,0 +1,435 @@
+package org.training.max.sunshine.net;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persistent cache of forecast response bodies, kept in a directory under the app cache dir.
+ * <p>
+ * Entries are keyed by the normalized request URL and carry the expiry time computed from the
+ * Cache-Control max-age of the response, and the time the response was served. The total size of the entries is kept under a byte
+ * budget by evicting the least recently used ones; the last-modified time of an entry file
+ * is its last access time, so the order survives process death.
+ */
+public class ForecastDiskCache {
+
+    private static final String LOG_TAG = ForecastDiskCache.class.getSimpleName();
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Temporary files older than that were left by a write interrupted by process death.
+    private static final long STALE_TEMP_FILE_AGE = 24 * 60 * 60 * 1000L;
+
+    // Version of the entry file format. Entries of other versions are ignored.
+    private static final int ENTRY_VERSION = 2;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // Total size of the entries, -1 until the directory has been scanned.
+    private long mSize = -1;
+
+    /**
+     * @param directory directory for the entries, it is created if needed
+     * @param maxBytes  byte budget for all entries together
+     */
+    public ForecastDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Cached response body.
+     */
+    public static final class Entry {
+        private final File mFile;
+        private final long mExpiresAt;
+        private final long mFetchedAt;
+        private final long mBodyOffset;
+
+        private Entry(File file, long expiresAt, long fetchedAt, long bodyOffset) {
+            mFile = file;
+            mExpiresAt = expiresAt;
+            mFetchedAt = fetchedAt;
+            mBodyOffset = bodyOffset;
+        }
+
+        /**
+         * @return time in milliseconds when the server served the response
+         */
+        public long getFetchedAt() {
+            return mFetchedAt;
+        }
+
+        /**
+         * @param now current time in milliseconds
+         * @return 'true' if the entry can be used without asking the server
+         */
+        public boolean isFresh(long now) {
+            return now < mExpiresAt;
+        }
+
+        /**
+         * @param now      current time in milliseconds
+         * @param maxStale how long after its expiry the entry may still stand in for the network
+         * @return 'true' if the entry expired no longer than maxStale ago
+         */
+        public boolean isUsableWhenStale(long now, long maxStale) {
+            return now - mExpiresAt <= maxStale;
+        }
+
+        /**
+         * @return stream with the response body. The caller must close it.
+         * @throws IOException if the entry can't be read any more
+         */
+        public InputStream openBody() throws IOException {
+            InputStream in = new FileInputStream(mFile);
+            long skipped = 0;
+            while (skipped < mBodyOffset) {
+                long count = in.skip(mBodyOffset - skipped);
+                if (count <= 0) {
+                    in.close();
+                    throw new IOException("Truncated cache entry " + mFile);
+                }
+                skipped += count;
+            }
+            return new BufferedInputStream(in);
+        }
+    }
+
+    /**
+     * Normalize the request URL, so the same request always maps to the same entry
+     * regardless of the order of its query parameters. The {@link ValidatorStore} keys
+     * the validators of a response the same way.
+     *
+     * @param url request URL
+     * @return normalized URL
+     */
+    static String normalizeUrl(String url) {
+        Uri uri = Uri.parse(url);
+        List<String> names = new ArrayList<>(uri.getQueryParameterNames());
+        Collections.sort(names);
+
+        Uri.Builder builder = uri.buildUpon()
+                .scheme(uri.getScheme() != null ? uri.getScheme().toLowerCase() : null)
+                .encodedAuthority(uri.getEncodedAuthority() != null
+                        ? uri.getEncodedAuthority().toLowerCase() : null)
+                .clearQuery()
+                .fragment(null);
+        for (String name : names) {
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        return builder.build().toString();
+    }
+
+    /**
+     * @param url request URL
+     * @return cached entry or 'null' if there is none
+     */
+    public synchronized Entry get(String url) {
+        String normalizedUrl = normalizeUrl(url);
+        File file = entryFile(normalizedUrl);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != ENTRY_VERSION || !normalizedUrl.equals(in.readUTF())) {
+                return null;
+            }
+            long expiresAt = in.readLong();
+            long fetchedAt = in.readLong();
+            long bodyOffset = headerLength(normalizedUrl);
+
+            // Mark the entry as recently used.
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(file, expiresAt, fetchedAt, bodyOffset);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Dropping unreadable cache entry for " + url, e);
+            remove(file);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store the response body while the caller reads it. The entry is committed only when
+     * the returned stream has been read to the end and closed, a partially read body is
+     * discarded.
+     *
+     * @param url       request URL
+     * @param expiresAt time in milliseconds until which the entry is fresh
+     * @param fetchedAt time in milliseconds when the server served the response
+     * @param body      response body
+     * @return stream to read the body from instead of the original one
+     */
+    public synchronized InputStream put(String url, long expiresAt, long fetchedAt,
+                                        InputStream body) {
+        String normalizedUrl = normalizeUrl(url);
+        File file = entryFile(normalizedUrl);
+        File tempFile = null;
+
+        DataOutputStream out = null;
+        try {
+            ensureDirectory();
+            // Every write gets its own temporary file, so concurrent responses for the same
+            // URL don't write into each other. The last one committed wins.
+            tempFile = File.createTempFile(file.getName(), TEMP_SUFFIX, mDirectory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(ENTRY_VERSION);
+            out.writeUTF(normalizedUrl);
+            out.writeLong(expiresAt);
+            out.writeLong(fetchedAt);
+            return new TeeInputStream(body, out, tempFile, file);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Can't cache response for " + url, e);
+            closeQuietly(out);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+            return body;
+        }
+    }
+
+    /**
+     * Extend the freshness of an entry, used when the server confirmed it with a 304 response.
+     *
+     * @param url       request URL
+     * @param expiresAt new time in milliseconds until which the entry is fresh
+     */
+    public synchronized void updateExpiry(String url, long expiresAt) {
+        Entry entry = get(url);
+        if (entry == null) {
+            return;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(entry.mFile, "rw");
+            try {
+                // The expiry follows the version and the URL in the entry header.
+                file.readInt();
+                file.readUTF();
+                file.writeLong(expiresAt);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Can't update cache entry for " + url, e);
+        }
+    }
+
+    /**
+     * Remove the entry of the URL.
+     *
+     * @param url request URL
+     */
+    public synchronized void remove(String url) {
+        remove(entryFile(normalizeUrl(url)));
+    }
+
+    private synchronized void commit(File tempFile, File file) {
+        long oldLength = file.length();
+        long newLength = tempFile.length();
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            return;
+        }
+        if (mSize >= 0) {
+            mSize += newLength - oldLength;
+        }
+        trimToSize();
+    }
+
+    private void remove(File file) {
+        long length = file.length();
+        if (file.delete() && mSize >= 0) {
+            mSize -= length;
+        }
+    }
+
+    /**
+     * Evict least recently used entries until the cache fits into the byte budget.
+     */
+    private synchronized void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        if (mSize < 0) {
+            mSize = 0;
+            long staleTime = System.currentTimeMillis() - STALE_TEMP_FILE_AGE;
+            for (File file : files) {
+                if (!file.getName().endsWith(TEMP_SUFFIX)) {
+                    mSize += file.length();
+                } else if (file.lastModified() < staleTime) {
+                    file.delete();
+                }
+            }
+        }
+        if (mSize <= mMaxBytes) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsTime = lhs.lastModified();
+                long rhsTime = rhs.lastModified();
+                return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (mSize <= mMaxBytes) {
+                break;
+            }
+            if (!file.getName().endsWith(TEMP_SUFFIX) && file.exists()) {
+                remove(file);
+            }
+        }
+    }
+
+    private void ensureDirectory() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Can't create cache directory " + mDirectory);
+        }
+    }
+
+    /**
+     * Entry header is the format version, the URL written by writeUTF, the expiry time and
+     * the fetch time. Normalized URLs are plain ASCII, so their modified UTF-8 length is the
+     * string length.
+     */
+    private static long headerLength(String normalizedUrl) {
+        return 4 + 2 + normalizedUrl.length() + 8 + 8;
+    }
+
+    private File entryFile(String normalizedUrl) {
+        return new File(mDirectory, hash(normalizedUrl));
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+        }
+    }
+
+    /**
+     * Copies everything which is read from the body into the temporary entry file.
+     */
+    private class TeeInputStream extends FilterInputStream {
+        private final DataOutputStream mOut;
+        private final File mTempFile;
+        private final File mFile;
+        private boolean mComplete;
+        private boolean mFailed;
+
+        TeeInputStream(InputStream in, DataOutputStream out, File tempFile, File file) {
+            super(in);
+            mOut = out;
+            mTempFile = tempFile;
+            mFile = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                mComplete = true;
+            } else {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read == -1) {
+                mComplete = true;
+            } else {
+                write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes would be missing in the entry.
+            mFailed = true;
+            return super.skip(count);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                closeQuietly(mOut);
+                if (mComplete && !mFailed) {
+                    commit(mTempFile, mFile);
+                } else {
+                    mTempFile.delete();
+                }
+            }
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            if (mFailed) {
+                return;
+            }
+            try {
+                mOut.write(buffer, offset, count);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Can't write cache entry " + mTempFile, e);
+                mFailed = true;
+            }
+        }
+    }
+}
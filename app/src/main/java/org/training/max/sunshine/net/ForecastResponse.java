@@ -0,0 +1,151 @@
+package org.training.max.sunshine.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.Response;
+
+/**
+ * Result of a forecast request made by {@link ForecastClient}.
+ */
+public class ForecastResponse implements Closeable {
+
+    private final Response mNetworkResponse;
+    private final InputStream mBody;
+    private final CountingInputStream mWireBody;
+    private final CountingInputStream mDecodedBody;
+    private final String mUrl;
+    private final String mETag;
+    private final String mLastModified;
+    private final ValidatorStore mValidatorStore;
+    private final boolean mStale;
+    private final long mFetchedAt;
+
+    private ForecastResponse(Response networkResponse, InputStream body,
+                             CountingInputStream wireBody, CountingInputStream decodedBody,
+                             String url, String eTag, String lastModified,
+                             ValidatorStore validatorStore, boolean stale, long fetchedAt) {
+        mNetworkResponse = networkResponse;
+        mBody = body;
+        mWireBody = wireBody;
+        mDecodedBody = decodedBody;
+        mUrl = url;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mValidatorStore = validatorStore;
+        mStale = stale;
+        mFetchedAt = fetchedAt;
+    }
+
+    static ForecastResponse cached(InputStream body, long fetchedAt) {
+        return new ForecastResponse(null, body, null, null, null, null, null, null, false,
+                fetchedAt);
+    }
+
+    static ForecastResponse stale(InputStream body, long fetchedAt) {
+        return new ForecastResponse(null, body, null, null, null, null, null, null, true,
+                fetchedAt);
+    }
+
+    static ForecastResponse notModified(Response networkResponse, long fetchedAt) {
+        return new ForecastResponse(networkResponse, null, null, null, null, null, null, null,
+                false, fetchedAt);
+    }
+
+    static ForecastResponse ok(Response networkResponse, InputStream body,
+                               CountingInputStream wireBody, CountingInputStream decodedBody,
+                               String url, String eTag, String lastModified,
+                               ValidatorStore validatorStore, long fetchedAt) {
+        return new ForecastResponse(networkResponse, body, wireBody, decodedBody, url, eTag,
+                lastModified, validatorStore, false, fetchedAt);
+    }
+
+    /**
+     * @return 'true' if the forecast hasn't changed since the last stored response,
+     * in that case there is no body
+     */
+    public boolean isNotModified() {
+        return mBody == null;
+    }
+
+    /**
+     * @return 'true' if the body comes from the response cache rather than the network
+     */
+    public boolean isFromCache() {
+        return mNetworkResponse == null;
+    }
+
+    /**
+     * @return 'true' if the body is an expired cache entry served because the network failed.
+     * It is only fit to be looked at: its days can't be dated, so it must not be stored.
+     */
+    public boolean isStale() {
+        return mStale;
+    }
+
+    /**
+     * @return time in milliseconds when the server served the response. For a body from the
+     * cache, that is when it was fetched, not when it was read back.
+     */
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    /**
+     * @return forecast body, 'null' for a "not modified" response
+     */
+    public InputStream getBody() {
+        return mBody;
+    }
+
+    /**
+     * @return count of body bytes read from the network so far, as transferred (compressed)
+     */
+    public long getWireBytes() {
+        return mWireBody != null ? mWireBody.getCount() : 0;
+    }
+
+    /**
+     * @return count of body bytes read so far after decompression
+     */
+    public long getDecodedBytes() {
+        return mDecodedBody != null ? mDecodedBody.getCount() : 0;
+    }
+
+    /**
+     * Mark the body as successfully stored. The rest of the body which the parser didn't need
+     * is read, so the response cache gets the complete entry, and the validators of this
+     * response are remembered for the next conditional request.
+     * Call it only after the body has been stored, otherwise a later 304 would refer
+     * to data we don't have.
+     *
+     * @throws IOException if the rest of the body can't be read
+     */
+    public void markStored() throws IOException {
+        if (mBody != null) {
+            byte[] buffer = new byte[512];
+            //noinspection StatementWithEmptyBody
+            while (mBody.read(buffer) != -1) {
+                // Drain the stream.
+            }
+        }
+        if (mValidatorStore != null && mUrl != null) {
+            mValidatorStore.put(mUrl, mETag, mLastModified);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mBody != null) {
+                mBody.close();
+            }
+        } finally {
+            // Closing rather than disconnecting returns a fully read connection to the pool.
+            if (mNetworkResponse != null) {
+                mNetworkResponse.close();
+            }
+        }
+    }
+}
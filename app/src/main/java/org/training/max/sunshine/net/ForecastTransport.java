@@ -0,0 +1,24 @@
+package org.training.max.sunshine.net;
+
+import java.io.IOException;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends the HTTP requests of {@link ForecastClient}. Caching, validators, retries and rate
+ * limiting all sit above it, so a stand-in can replace OpenWeatherMap without changing them.
+ */
+public interface ForecastTransport {
+
+    /**
+     * Send the request and wait for the response headers.
+     *
+     * @param request request to send
+     * @param token   cancellation of the refresh. Cancelling it must abort the request,
+     *                including a body which is still being read.
+     * @return response, the caller must close it
+     * @throws IOException if the request couldn't be sent or no response was received
+     */
+    Response execute(Request request, CancellationToken token) throws IOException;
+}
@@ -0,0 +1,42 @@
+package org.training.max.sunshine.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answers with a status which doesn't carry a forecast.
+ */
+public class HttpStatusException extends IOException {
+
+    private final int mStatus;
+    private final long mRetryAfterMillis;
+
+    /**
+     * @param status           HTTP status code of the response
+     * @param retryAfterMillis delay asked by the Retry-After header, -1 if there was none
+     * @param url              request URL
+     */
+    public HttpStatusException(int status, long retryAfterMillis, String url) {
+        super("Unexpected response " + status + " for " + url);
+        mStatus = status;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * @return delay asked by the Retry-After header, -1 if there was none
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+
+    /**
+     * @return 'true' if the server is overloaded or failing, so the request may succeed later.
+     * Other errors (bad API key, unknown city) won't go away by retrying.
+     */
+    public boolean isTransient() {
+        return mStatus == 429 || mStatus == 500 || mStatus == 502 || mStatus == 503 || mStatus == 504;
+    }
+}
@@ -0,0 +1,136 @@
+package org.training.max.sunshine.net;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * Transport which sends requests over the network. Its connection pool keeps connections alive
+ * between requests and locations, so a refresh doesn't pay TCP (and TLS) setup again.
+ */
+public class OkHttpForecastTransport implements ForecastTransport {
+
+    /**
+     * Longest wait for a connection to be established.
+     */
+    public static final long CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+
+    /**
+     * Longest wait for a single read from the connection.
+     */
+    public static final long READ_TIMEOUT_MILLIS = 15 * 1000;
+
+    private final OkHttpClient mHttpClient;
+    private final ConnectionStats mConnectionStats = new ConnectionStats();
+
+    /**
+     * @param maxIdleConnections count of idle connections kept alive for reuse
+     * @param keepAliveSeconds   time an idle connection is kept alive for reuse
+     */
+    public OkHttpForecastTransport(int maxIdleConnections, long keepAliveSeconds) {
+        mHttpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds,
+                        TimeUnit.SECONDS))
+                .connectTimeout(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .readTimeout(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .addNetworkInterceptor(mConnectionStats)
+                .build();
+    }
+
+    @Override
+    public Response execute(Request request, CancellationToken token) throws IOException {
+        token.throwIfCancelled();
+        OkHttpClient client = mHttpClient;
+        long remainingMillis = token.getRemainingMillis();
+        if (remainingMillis < Math.max(CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS)) {
+            // No socket operation may outlive the deadline. The derived client shares the pool.
+            client = mHttpClient.newBuilder()
+                    .connectTimeout(Math.max(1, Math.min(remainingMillis, CONNECT_TIMEOUT_MILLIS)),
+                            TimeUnit.MILLISECONDS)
+                    .readTimeout(Math.max(1, Math.min(remainingMillis, READ_TIMEOUT_MILLIS)),
+                            TimeUnit.MILLISECONDS)
+                    .build();
+        }
+
+        final Call call = client.newCall(request);
+        Runnable cancelCall = new Runnable() {
+            @Override
+            public void run() {
+                call.cancel();
+            }
+        };
+        // Stays registered while the body is read. The token may outlive the call, e.g. across
+        // retries, so the listener is removed once the response is closed.
+        token.addListener(cancelCall);
+        Response response;
+        try {
+            response = call.execute();
+        } catch (IOException | RuntimeException e) {
+            token.removeListener(cancelCall);
+            throw e;
+        }
+        return response.newBuilder()
+                .body(new ListenerReleasingBody(response.body(), token, cancelCall))
+                .build();
+    }
+
+    /**
+     * @return counters of new vs. reused connections of all requests sent by this transport
+     */
+    public ConnectionStats getConnectionStats() {
+        return mConnectionStats;
+    }
+
+    @Override
+    public String toString() {
+        return "OkHttpForecastTransport{" + mConnectionStats + "}";
+    }
+
+    /**
+     * Body which takes the cancellation listener of its call off the token when it is closed.
+     */
+    private static final class ListenerReleasingBody extends ResponseBody {
+
+        private final ResponseBody mDelegate;
+        private final CancellationToken mToken;
+        private final Runnable mListener;
+
+        ListenerReleasingBody(ResponseBody delegate, CancellationToken token, Runnable listener) {
+            mDelegate = delegate;
+            mToken = token;
+            mListener = listener;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mDelegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return mDelegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return mDelegate.source();
+        }
+
+        @Override
+        public void close() {
+            try {
+                mDelegate.close();
+            } finally {
+                mToken.removeListener(mListener);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.training.max.sunshine.net;
+
+import java.util.Random;
+
+/**
+ * Limited retries with exponential backoff and full jitter.
+ * <p>
+ * The delay before retry n is a random value between 0 and min(maxDelay, baseDelay * 2^n),
+ * so clients which failed together don't come back together.
+ */
+public class RetryPolicy {
+
+    /**
+     * Default count of attempts, the first one included.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Default base delay of the backoff.
+     */
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+
+    /**
+     * Default upper bound of a single delay. A longer Retry-After isn't waited for.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 8000;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom = new Random();
+
+    /**
+     * @param maxAttempts     count of attempts, the first one included
+     * @param baseDelayMillis base delay of the backoff
+     * @param maxDelayMillis  upper bound of a single delay
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is needed: " + maxAttempts);
+        }
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @return policy with the default values
+     */
+    public static RetryPolicy createDefault() {
+        return new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS,
+                DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public long getMaxDelayMillis() {
+        return mMaxDelayMillis;
+    }
+
+    /**
+     * @param failedAttempts   count of attempts which failed so far, at least 1
+     * @param retryAfterMillis delay asked by the server, -1 if none
+     * @return delay before the next attempt, or -1 if there shouldn't be another attempt
+     */
+    public long getDelayMillis(int failedAttempts, long retryAfterMillis) {
+        if (failedAttempts >= mMaxAttempts) {
+            return -1;
+        }
+        if (retryAfterMillis > mMaxDelayMillis) {
+            // Waiting that long would blow the latency of the refresh.
+            return -1;
+        }
+
+        long ceiling = mBaseDelayMillis << Math.min(failedAttempts - 1, 30);
+        if (ceiling <= 0 || ceiling > mMaxDelayMillis) {
+            ceiling = mMaxDelayMillis;
+        }
+        long delay = (long) (mRandom.nextDouble() * ceiling);
+        return Math.max(delay, retryAfterMillis);
+    }
+}
@@ -0,0 +1,155 @@
+package org.training.max.sunshine.net;
+
+import android.os.SystemClock;
+
+import java.io.InterruptedIOException;
+import java.util.PriorityQueue;
+
+/**
+ * Token bucket which keeps the requests made with one OWM API key under its quota.
+ * <p>
+ * The bucket holds up to {@code burst} tokens and is refilled at the sustained rate. A request
+ * takes one token; when there is none it waits in line rather than failing. Waiters are served
+ * by priority, then in arrival order, so an interactive refresh overtakes queued background syncs.
+ */
+public class TokenBucketRateLimiter {
+
+    /**
+     * Priority of a request the user is waiting for.
+     */
+    public static final int PRIORITY_INTERACTIVE = 0;
+
+    /**
+     * Priority of a request nobody is watching, e.g. a sync of saved locations.
+     */
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    private final int mBurst;
+    private final double mTokensPerMilli;
+
+    private final PriorityQueue<Waiter> mWaiters = new PriorityQueue<>();
+    private long mNextSequence;
+    private double mTokens;
+    private long mLastRefill;
+
+    /**
+     * @param burst            count of requests which may be sent back to back
+     * @param requestsPerMinute sustained rate of requests
+     */
+    public TokenBucketRateLimiter(int burst, double requestsPerMinute) {
+        if (burst < 1 || requestsPerMinute <= 0) {
+            throw new IllegalArgumentException("Invalid rate: burst " + burst + ", "
+                    + requestsPerMinute + " requests per minute");
+        }
+        mBurst = burst;
+        mTokensPerMilli = requestsPerMinute / (60 * 1000);
+        mTokens = burst;
+        mLastRefill = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Take a token, waiting for one as long as needed.
+     *
+     * @param priority {@link #PRIORITY_INTERACTIVE} or {@link #PRIORITY_BACKGROUND}
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(int priority) throws InterruptedIOException {
+        acquire(priority, CancellationToken.NONE);
+    }
+
+    /**
+     * Take a token, waiting for one until the refresh is cancelled.
+     *
+     * @param priority {@link #PRIORITY_INTERACTIVE} or {@link #PRIORITY_BACKGROUND}
+     * @param token    cancellation of the refresh, it leaves the line when cancelled
+     * @throws InterruptedIOException if the refresh is cancelled or the thread is interrupted
+     *                                while waiting
+     */
+    public void acquire(int priority, CancellationToken token) throws InterruptedIOException {
+        Runnable wakeUp = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (TokenBucketRateLimiter.this) {
+                    TokenBucketRateLimiter.this.notifyAll();
+                }
+            }
+        };
+        token.addListener(wakeUp);
+        try {
+            acquireLocked(priority, token);
+        } finally {
+            token.removeListener(wakeUp);
+        }
+    }
+
+    private synchronized void acquireLocked(int priority, CancellationToken token)
+            throws InterruptedIOException {
+        Waiter waiter = new Waiter(priority, mNextSequence++);
+        mWaiters.add(waiter);
+        try {
+            while (true) {
+                if (token.isCancelled()) {
+                    mWaiters.remove(waiter);
+                    notifyAll();
+                    token.throwIfCancelled();
+                }
+                refill();
+                boolean first = mWaiters.peek() == waiter;
+                if (first && mTokens >= 1) {
+                    mTokens -= 1;
+                    mWaiters.poll();
+                    // Let the next waiter take its place at the head of the line.
+                    notifyAll();
+                    return;
+                }
+                // 0 waits until notified. The deadline isn't notified, so it bounds the wait.
+                long waitMillis = first
+                        ? Math.max(1, (long) Math.ceil((1 - mTokens) / mTokensPerMilli)) : 0;
+                long remainingMillis = token.getRemainingMillis();
+                if (remainingMillis != Long.MAX_VALUE) {
+                    remainingMillis = Math.max(1, remainingMillis);
+                    waitMillis = waitMillis == 0 ? remainingMillis
+                            : Math.min(waitMillis, remainingMillis);
+                }
+                wait(waitMillis);
+            }
+        } catch (InterruptedException e) {
+            mWaiters.remove(waiter);
+            notifyAll();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+        }
+    }
+
+    /**
+     * @return count of requests which could be sent right now without waiting
+     */
+    public synchronized int getAvailableTokens() {
+        refill();
+        return (int) mTokens;
+    }
+
+    private void refill() {
+        long now = SystemClock.elapsedRealtime();
+        mTokens = Math.min(mBurst, mTokens + (now - mLastRefill) * mTokensPerMilli);
+        mLastRefill = now;
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+        final int priority;
+        final long sequence;
+
+        Waiter(int priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
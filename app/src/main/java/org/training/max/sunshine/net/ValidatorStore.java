@@ -0,0 +1,79 @@
+package org.training.max.sunshine.net;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Keeps the HTTP cache validators (ETag and Last-Modified) of the last forecast response
+ * which was successfully stored, per request URL. URLs are normalized like the keys of the
+ * {@link ForecastDiskCache}, so validators and cached body always belong to the same request.
+ */
+public class ValidatorStore {
+
+    private static final String PREFS_NAME = "forecast_validators";
+
+    private static final String ETAG_SUFFIX = "|etag";
+    private static final String LAST_MODIFIED_SUFFIX = "|last_modified";
+
+    private final SharedPreferences mPrefs;
+
+    public ValidatorStore(Context context) {
+        mPrefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @param url request URL
+     * @return stored ETag or 'null' if there is none
+     */
+    public String getETag(String url) {
+        return mPrefs.getString(key(url) + ETAG_SUFFIX, null);
+    }
+
+    /**
+     * @param url request URL
+     * @return stored Last-Modified date or 'null' if there is none
+     */
+    public String getLastModified(String url) {
+        return mPrefs.getString(key(url) + LAST_MODIFIED_SUFFIX, null);
+    }
+
+    /**
+     * Remember validators of the response. If the server didn't send any, the old ones are dropped.
+     *
+     * @param url          request URL
+     * @param eTag         value of the ETag header, may be 'null'
+     * @param lastModified value of the Last-Modified header, may be 'null'
+     */
+    public void put(String url, String eTag, String lastModified) {
+        String key = key(url);
+        SharedPreferences.Editor editor = mPrefs.edit();
+        putOrRemove(editor, key + ETAG_SUFFIX, eTag);
+        putOrRemove(editor, key + LAST_MODIFIED_SUFFIX, lastModified);
+        editor.apply();
+    }
+
+    /**
+     * Forget validators of the URL, so the next request for it is unconditional.
+     *
+     * @param url request URL
+     */
+    public void remove(String url) {
+        String key = key(url);
+        mPrefs.edit()
+                .remove(key + ETAG_SUFFIX)
+                .remove(key + LAST_MODIFIED_SUFFIX)
+                .apply();
+    }
+
+    private static String key(String url) {
+        return ForecastDiskCache.normalizeUrl(url);
+    }
+
+    private static void putOrRemove(SharedPreferences.Editor editor, String key, String value) {
+        if (value != null) {
+            editor.putString(key, value);
+        } else {
+            editor.remove(key);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.training.max.sunshine.sync;
+
+import android.util.Log;
+
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.ForecastResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The path of a forecast from the network to the screen, in explicit stages:
+ * download, decode, normalize, persist and project for the UI.
+ * <p>
+ * Each stage is an interface, so it can be tested on its own or swapped, e.g. for a recorded
+ * download. Stages hand a {@link ForecastBatch} to each other and each one is timed, see
+ * {@link ForecastTimings}.
+ * The body is streamed, so the decode time includes reading the body from the network while
+ * the download time covers the request up to the response headers.
+ */
+public class ForecastPipeline {
+
+    private static final String LOG_TAG = ForecastPipeline.class.getSimpleName();
+
+    /**
+     * Sends the request and returns the response with its body still unread.
+     */
+    public interface DownloadStage {
+        ForecastResponse download(String url, int priority, CancellationToken token)
+                throws IOException;
+    }
+
+    /**
+     * Decodes the response body into the rows and city of the batch.
+     */
+    public interface DecodeStage {
+        void decode(InputStream body, ForecastBatch batch, CancellationToken token)
+                throws IOException;
+    }
+
+    /**
+     * Turns decoded rows into rows of the store: dates and the location key.
+     */
+    public interface NormalizeStage {
+        void normalize(ForecastBatch batch) throws IOException;
+    }
+
+    /**
+     * Writes the rows to the store.
+     */
+    public interface PersistStage {
+        /**
+         * @return count of the days which were written because they are new or differ from
+         * the stored ones
+         */
+        int persist(ForecastBatch batch, CancellationToken token) throws IOException;
+    }
+
+    /**
+     * Reads the stored forecast of a location in the shape the UI shows it.
+     *
+     * @param <T> type of the projection
+     */
+    public interface ProjectStage<T> {
+        /**
+         * @return projection, 'null' if nothing is stored for the location
+         */
+        T project(String locationSetting);
+    }
+
+    private final DownloadStage mDownload;
+    private final DecodeStage mDecode;
+    private final NormalizeStage mNormalize;
+    private final PersistStage mPersist;
+
+    public ForecastPipeline(DownloadStage download, DecodeStage decode, NormalizeStage normalize,
+                            PersistStage persist) {
+        mDownload = download;
+        mDecode = decode;
+        mNormalize = normalize;
+        mPersist = persist;
+    }
+
+    /**
+     * Run the forecast of the URL through download, decode, normalize and persist.
+     *
+     * @param url      request URL
+     * @param batch    empty batch of the location, it is filled by the stages
+     * @param priority priority of the request while it waits for the rate limit
+     * @param token    cancellation and deadline
+     * @return count of the days which changed in the store, {@link ForecastSync#NOT_MODIFIED}
+     * if the server says the stored forecast is current or no day differs from the stored one,
+     * {@link ForecastSync#STALE} if the network failed and only
+     * a stale forecast was at hand
+     * @throws IOException if a stage failed
+     */
+    public int run(String url, ForecastBatch batch, int priority, CancellationToken token)
+            throws IOException {
+        String locationSetting = batch.getLocationSetting();
+        ForecastTimings timings = batch.getTimings();
+
+        long start = System.nanoTime();
+        ForecastResponse response = mDownload.download(url, priority, token);
+        timings.downloadNanos = System.nanoTime() - start;
+        try {
+            if (response.isNotModified()) {
+                Log.d(LOG_TAG, "Forecast not modified for " + locationSetting);
+                return ForecastSync.NOT_MODIFIED;
+            }
+            if (response.isStale()) {
+                // Its days can't be dated from today, the stored forecast is shown instead.
+                Log.w(LOG_TAG, "Only a stale forecast for " + locationSetting + ", not stored");
+                return ForecastSync.STALE;
+            }
+            if (response.isFromCache()) {
+                Log.d(LOG_TAG, "Forecast served from cache for " + locationSetting);
+            }
+
+            batch.setFetchedAt(response.getFetchedAt());
+            start = System.nanoTime();
+            mDecode.decode(response.getBody(), batch, token);
+            timings.decodeNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            mNormalize.normalize(batch);
+            timings.normalizeNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int changed = mPersist.persist(batch, token);
+            response.markStored();
+            timings.persistNanos = System.nanoTime() - start;
+            timings.persistedRows = batch.size();
+            timings.changedRows = changed;
+
+            Log.d(LOG_TAG, "Forecast for " + locationSetting + ": " + changed + " of "
+                    + batch.size() + " days changed, "
+                    + response.getWireBytes() + " bytes transferred, "
+                    + response.getDecodedBytes() + " bytes decoded; " + timings);
+            return changed;
+        } finally {
+            try {
+                response.close();
+            } catch (final IOException e) {
+                Log.e(LOG_TAG, "Error closing stream", e);
+            }
+        }
+    }
+
+    /**
+     * Run the projection stage for the UI and time it.
+     *
+     * @param stage           projection to run
+     * @param locationSetting The location string used to request updates from the server.
+     * @param timings         timings which get the projection time
+     * @return projection, 'null' if nothing is stored for the location
+     */
+    public static <T> T project(ProjectStage<T> stage, String locationSetting,
+                                ForecastTimings timings) {
+        long start = System.nanoTime();
+        T projection = stage.project(locationSetting);
+        timings.projectNanos = System.nanoTime() - start;
+        return projection;
+    }
+}
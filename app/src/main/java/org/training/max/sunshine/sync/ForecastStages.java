@@ -0,0 +1,175 @@
+package org.training.max.sunshine.sync;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+
+import org.training.max.sunshine.data.WeatherProvider;
+
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.DayForecast;
+import org.training.max.sunshine.net.ForecastByteDecoder;
+import org.training.max.sunshine.net.ForecastClient;
+import org.training.max.sunshine.net.ForecastHandler;
+import org.training.max.sunshine.net.ForecastResponse;
+import org.training.max.sunshine.util.ConditionDictionary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.TimeZone;
+
+import static org.training.max.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * The stages of the {@link ForecastPipeline} which the app runs.
+ */
+public final class ForecastStages {
+
+    /**
+     * We can't instantiate the utility class.
+     */
+    private ForecastStages() {
+        // This constructor is intentionally empty. It is utility class which shouldn't be instantiated.
+    }
+
+    /**
+     * Downloads through the shared {@link ForecastClient}, with its cache, retries and rate limit.
+     */
+    public static class ClientDownload implements ForecastPipeline.DownloadStage {
+        private final Context mContext;
+
+        public ClientDownload(Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        @Override
+        public ForecastResponse download(String url, int priority, CancellationToken token)
+                throws IOException {
+            return ForecastClient.getInstance(mContext).fetch(url, priority, token);
+        }
+    }
+
+    /**
+     * Decodes the OWM JSON straight from its bytes with {@link ForecastByteDecoder}. Every day
+     * is added to the batch as soon as it is decoded, the dates are left to normalization.
+     * The days of a condition share its description from the {@link ConditionDictionary}.
+     */
+    public static class JsonDecode implements ForecastPipeline.DecodeStage {
+
+        @Override
+        public void decode(InputStream body, final ForecastBatch batch, CancellationToken token)
+                throws IOException {
+            ForecastByteDecoder.parse(body, new ForecastHandler() {
+                @Override
+                public void onCity(String cityName, double lat, double lon) {
+                    batch.setCity(cityName, lat, lon);
+                }
+
+                @Override
+                public void onDay(DayForecast day) {
+                    String description =
+                            ConditionDictionary.intern(day.weatherId, day.description);
+                    batch.addDay(day.weatherId, description, (float) day.high,
+                            (float) day.low, (float) day.pressure, day.humidity,
+                            (float) day.windSpeed, (float) day.windDirection);
+                }
+            }, token);
+        }
+    }
+
+    /**
+     * Dates the days from the day the forecast was fetched on and resolves their location,
+     * which is added to the store if needed.
+     */
+    public static class StoreNormalize implements ForecastPipeline.NormalizeStage {
+        private final ForecastSync mForecastSync;
+
+        public StoreNormalize(ForecastSync forecastSync) {
+            mForecastSync = forecastSync;
+        }
+
+        @Override
+        public void normalize(ForecastBatch batch) throws IOException {
+            if (!batch.hasCity()) {
+                throw new IOException("Forecast for " + batch.getLocationSetting() + " has no city");
+            }
+            long locationId = mForecastSync.addLocation(batch.getLocationSetting(),
+                    batch.getCityName(), batch.getLat(), batch.getLon());
+            batch.setLocationId(locationId);
+            // A cache hit may have been fetched on the day before, its first day is that one.
+            long fetchedAt = batch.getFetchedAt();
+            batch.setDatesFrom(fetchedAt > 0 ? fetchedAt : System.currentTimeMillis(),
+                    TimeZone.getDefault());
+        }
+    }
+
+    /**
+     * Upserts the days through the WeatherProvider in one transaction. Only days which are new
+     * or differ from the stored ones are written, and they are marked as changed in the batch.
+     * The batch goes to the provider as it is when the provider runs in this process,
+     * ContentValues are only built when it has to cross a process boundary.
+     */
+    public static class ProviderPersist implements ForecastPipeline.PersistStage {
+
+        // Count of weather columns, the location and the description included.
+        private static final int WEATHER_COLUMN_COUNT = 10;
+
+        private final Context mContext;
+
+        public ProviderPersist(Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        @Override
+        public int persist(ForecastBatch batch, CancellationToken token) throws IOException {
+            if (batch.size() == 0) {
+                return 0;
+            }
+            // Last chance to back out: the provider transaction is atomic and isn't interrupted.
+            token.throwIfCancelled();
+
+            ContentResolver resolver = mContext.getContentResolver();
+            ContentProviderClient client =
+                    resolver.acquireContentProviderClient(WeatherEntry.CONTENT_URI);
+            if (client != null) {
+                try {
+                    ContentProvider provider = client.getLocalContentProvider();
+                    if (provider instanceof WeatherProvider) {
+                        return ((WeatherProvider) provider).upsert(batch).length;
+                    }
+                } finally {
+                    client.release();
+                }
+            }
+
+            // A remote provider only reports how many days changed, not which ones.
+            int changedDays = resolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                    toContentValues(batch));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.setChanged(i, changedDays != 0);
+            }
+            return changedDays;
+        }
+
+        private static ContentValues[] toContentValues(ForecastBatch batch) {
+            ContentValues[] rows = new ContentValues[batch.size()];
+            for (int i = 0; i < rows.length; i++) {
+                ContentValues weatherValues = new ContentValues(WEATHER_COLUMN_COUNT);
+                weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, batch.getLocationId());
+                weatherValues.put(WeatherEntry.COLUMN_DATE, batch.getDate(i));
+                weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, batch.getHumidity(i));
+                weatherValues.put(WeatherEntry.COLUMN_PRESSURE, batch.getPressure(i));
+                weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, batch.getWindSpeed(i));
+                weatherValues.put(WeatherEntry.COLUMN_DEGREES, batch.getWindDirection(i));
+                weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, batch.getHigh(i));
+                weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, batch.getLow(i));
+                weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, batch.getDescription(i));
+                weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, batch.getWeatherId(i));
+                rows[i] = weatherValues;
+            }
+            return rows;
+        }
+    }
+}
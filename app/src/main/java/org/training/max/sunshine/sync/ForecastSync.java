@@ -0,0 +1,303 @@
+package org.training.max.sunshine.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import org.training.max.sunshine.ForecastSettings;
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.ForecastClient;
+import org.training.max.sunshine.net.TokenBucketRateLimiter;
+import org.training.max.sunshine.util.BuildUtils;
+import org.training.max.sunshine.util.DayMath;
+
+import java.io.IOException;
+import java.util.TimeZone;
+
+import static org.training.max.sunshine.data.WeatherContract.LocationEntry;
+import static org.training.max.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * Fetches the forecast of a location and stores it through the WeatherProvider,
+ * by running it through a {@link ForecastPipeline}.
+ * <p>
+ * Overlapping syncs of the same location share a single request, see {@link RequestCoalescer}.
+ * <p>
+ * The request only asks for as many days as needed: the whole window of the day count setting
+ * while days at its end are missing from the store, otherwise just the first days, whose
+ * forecast is the one that gets revised. Stored days beyond the response are kept.
+ * <p>
+ * Every sync records its time and a new freshness TTL on the location row, see
+ * {@link FreshnessPolicy}. {@link #syncIfStale} skips the network while the stored forecast
+ * is within that TTL.
+ */
+public class ForecastSync {
+
+    private static final String LOG_TAG = ForecastSync.class.getSimpleName();
+
+    /**
+     * Result of a sync when the forecast hasn't changed since it was stored, i.e. no day
+     * changed in the store.
+     */
+    public static final int NOT_MODIFIED = 0;
+
+    /**
+     * Result of a sync when the network failed and only an expired cached forecast was at
+     * hand. Nothing was stored, the stored forecast is the best there is.
+     */
+    public static final int STALE = -2;
+
+    // Successful results are shared with syncs of the same location for that long.
+    private static final long COALESCING_WINDOW_MILLIS = 5 * 1000;
+
+    // Days refreshed when the store already covers the whole window.
+    private static final int REVISED_DAY_COUNT = 3;
+
+    private static final RequestCoalescer<String, Integer> sRequestCoalescer =
+            new RequestCoalescer<>(COALESCING_WINDOW_MILLIS);
+
+    private final Context mContext;
+    private final FreshnessPolicy mFreshnessPolicy = FreshnessPolicy.createDefault();
+    private final ForecastPipeline mPipeline;
+
+    public ForecastSync(Context context) {
+        mContext = context.getApplicationContext();
+        mPipeline = new ForecastPipeline(
+                new ForecastStages.ClientDownload(mContext),
+                new ForecastStages.JsonDecode(),
+                new ForecastStages.StoreNormalize(this),
+                new ForecastStages.ProviderPersist(mContext));
+    }
+
+    /**
+     * Bring the stored forecast of the location up to date for a user who is waiting for it.
+     *
+     * @see #sync(String, int, CancellationToken)
+     */
+    public int sync(String locationSetting) throws IOException {
+        return sync(locationSetting, TokenBucketRateLimiter.PRIORITY_INTERACTIVE,
+                CancellationToken.NONE);
+    }
+
+    /**
+     * Bring the stored forecast of the location up to date, unless it is still fresh and
+     * covers all the days the user asked for.
+     *
+     * @return {@link #NOT_MODIFIED} if the network was skipped, otherwise as
+     * {@link #sync(String, int, CancellationToken)}
+     * @see #sync(String, int, CancellationToken)
+     */
+    public int syncIfStale(String locationSetting, int priority, CancellationToken token)
+            throws IOException {
+        long[] record = queryFreshnessRecord(locationSetting);
+        if (record != null
+                && mFreshnessPolicy.isFresh(record[0], record[1], System.currentTimeMillis())
+                && getMissingDayCount(locationSetting) == 0) {
+            Log.d(LOG_TAG, "Forecast for " + locationSetting + " is fresh, sync skipped");
+            return NOT_MODIFIED;
+        }
+        return sync(locationSetting, priority, token);
+    }
+
+    /**
+     * Bring the stored forecast of the location up to date.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @param priority        priority of the request while it waits for the rate limit
+     * @param token           cancellation and deadline, checked by the download, the parser
+     *                        and before the store transaction. A sync shared with other callers
+     *                        is only cancelled once all of them are.
+     * @return count of the days which changed in the store, {@link #NOT_MODIFIED} if the stored
+     * forecast is current, {@link #STALE} if the network failed and the stored forecast was kept
+     * @throws org.training.max.sunshine.net.CancelledException if the sync was cancelled or
+     *                                                          its deadline passed
+     * @throws IOException if the forecast couldn't be fetched or parsed
+     */
+    public int sync(final String locationSetting, final int priority,
+                    final CancellationToken token) throws IOException {
+        final String url = BuildUtils.buildOpenWeatherMapUrlString(locationSetting,
+                getRequestDayCount(locationSetting));
+        if (url == null) {
+            throw new IOException("Location is empty");
+        }
+
+        return sRequestCoalescer.execute(locationSetting, token,
+                new RequestCoalescer.Request<Integer>() {
+                    @Override
+                    public Integer execute(CancellationToken sharedToken) throws IOException {
+                        int result = sync(url, locationSetting, priority, sharedToken);
+                        if (result == NOT_MODIFIED && !hasStoredForecast(locationSetting)) {
+                            // The server says nothing changed, but the data it refers to isn't
+                            // stored (e.g. the database was wiped). Ask again without validators.
+                            ForecastClient.getInstance(mContext).forgetValidators(url);
+                            result = sync(url, locationSetting, priority, sharedToken);
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    /**
+     * Make a conditional request for the forecast and run it through the pipeline. If it hasn't
+     * changed since the last stored response, parsing and writing to the database are skipped.
+     */
+    private int sync(String url, String locationSetting, int priority, CancellationToken token)
+            throws IOException {
+        ForecastBatch batch = new ForecastBatch(locationSetting);
+        int result = mPipeline.run(url, batch, priority, token);
+        if (result != STALE) {
+            recordSync(locationSetting, batch.getChangedDays(), batch.size());
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to handle insertion of a new location in the weather database.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @param cityName A human-readable city name, e.g "Mountain View"
+     * @param lat the latitude of the city
+     * @param lon the longitude of the city
+     * @return the row ID of the added location.
+     */
+    public long addLocation(String locationSetting, String cityName, double lat, double lon) {
+        long locationId;
+
+        // First, check if the location with this city name exists in the db
+        Cursor locationCursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+
+        if (locationCursor != null && locationCursor.moveToFirst()) {
+            // If it exists, return the current ID
+            int locationIdIndex = locationCursor.getColumnIndex(LocationEntry._ID);
+            locationId = locationCursor.getLong(locationIdIndex);
+        } else {
+            // Otherwise, insert it using the content resolver and the base URI
+            ContentValues locationValues = new ContentValues();
+            locationValues.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+            locationValues.put(LocationEntry.COLUMN_COORD_LAT, lat);
+            locationValues.put(LocationEntry.COLUMN_COORD_LONG, lon);
+
+            Uri insertedUri = mContext.getContentResolver().insert(
+                    LocationEntry.CONTENT_URI, locationValues);
+            locationId = ContentUris.parseId(insertedUri);
+        }
+
+        if (locationCursor != null) {
+            locationCursor.close();
+        }
+        return locationId;
+    }
+
+    /**
+     * Work out the smallest count of days to request. OWM always starts with the current day,
+     * so a missing day at the end of the window takes a request of the whole window.
+     */
+    int getRequestDayCount(String locationSetting) {
+        int windowDays = ForecastSettings.get(mContext).getDayCount();
+        int missingDays = getMissingDayCount(locationSetting);
+        if (missingDays > 0) {
+            Log.d(LOG_TAG, missingDays + " days missing for " + locationSetting);
+            return windowDays;
+        }
+        return Math.min(REVISED_DAY_COUNT, windowDays);
+    }
+
+    /**
+     * @return count of days at the end of the window which aren't stored
+     */
+    private int getMissingDayCount(String locationSetting) {
+        int windowDays = ForecastSettings.get(mContext).getDayCount();
+        long latestStoredDate = queryLatestStoredDate(locationSetting);
+        if (latestStoredDate < 0) {
+            return windowDays;
+        }
+
+        TimeZone timeZone = TimeZone.getDefault();
+        long today = DayMath.getDay(System.currentTimeMillis(), timeZone);
+        long latestStoredDay = DayMath.getDay(latestStoredDate, timeZone);
+        return (int) Math.max(0, Math.min(windowDays, today + windowDays - 1 - latestStoredDay));
+    }
+
+    /**
+     * @return last synced time and freshness TTL of the location, 'null' if it isn't stored
+     */
+    private long[] queryFreshnessRecord(String locationSetting) {
+        Cursor cur = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_LAST_SYNCED, LocationEntry.COLUMN_FRESHNESS_TTL},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (cur == null) {
+            return null;
+        }
+        try {
+            return cur.moveToFirst() ? new long[]{cur.getLong(0), cur.getLong(1)} : null;
+        } finally {
+            cur.close();
+        }
+    }
+
+    /**
+     * Remember that the location was synced, and adapt its TTL to how much the sync changed.
+     *
+     * @param changedDays count of days which were new or differed from the stored ones
+     * @param checkedDays count of days received, 0 for a "not modified" response
+     */
+    private void recordSync(String locationSetting, int changedDays, int checkedDays) {
+        long[] record = queryFreshnessRecord(locationSetting);
+        if (record == null) {
+            return;
+        }
+        long ttl = mFreshnessPolicy.nextTtl(record[1], changedDays, checkedDays);
+        Log.d(LOG_TAG, changedDays + " of " + checkedDays + " days changed for " + locationSetting
+                + ", fresh for " + ttl / 60000 + " minutes");
+
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LAST_SYNCED, System.currentTimeMillis());
+        values.put(LocationEntry.COLUMN_FRESHNESS_TTL, ttl);
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{locationSetting});
+    }
+
+    /**
+     * @return date of the latest stored day of the location, -1 if nothing is stored
+     */
+    private long queryLatestStoredDate(String locationSetting) {
+        Cursor cur = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(locationSetting),
+                new String[]{"MAX(" + WeatherEntry.COLUMN_DATE + ")"}, null, null, null);
+        if (cur == null) {
+            return -1;
+        }
+        try {
+            return cur.moveToFirst() && !cur.isNull(0) ? cur.getLong(0) : -1;
+        } finally {
+            cur.close();
+        }
+    }
+
+    private boolean hasStoredForecast(String locationSetting) {
+        Uri weatherForLocationUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cur = mContext.getContentResolver().query(weatherForLocationUri,
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null, null);
+        if (cur == null) {
+            return false;
+        }
+        try {
+            return cur.getCount() > 0;
+        } finally {
+            cur.close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.training.max.sunshine.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.ForecastClient;
+import org.training.max.sunshine.net.TokenBucketRateLimiter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.training.max.sunshine.data.WeatherContract.LocationEntry;
+
+/**
+ * Syncs the forecasts of many locations in parallel on a bounded pool of worker threads.
+ * <p>
+ * Every location is fetched and stored by {@link ForecastSync} on its own worker, so results
+ * are persisted as soon as they arrive rather than after the whole batch.
+ */
+public class ForecastSyncEngine {
+
+    private static final String LOG_TAG = ForecastSyncEngine.class.getSimpleName();
+
+    /**
+     * Default count of locations which are synced at the same time.
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    // A location which takes longer than that gives up, so it can't hold a worker for long.
+    private static final long LOCATION_DEADLINE_MILLIS = 60 * 1000;
+
+    // Idle workers are stopped after that, so the engine costs nothing between syncs.
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    private final ForecastSync mForecastSync;
+    private final Context mContext;
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * @param context  any context
+     * @param poolSize maximum count of locations which are synced at the same time
+     */
+    public ForecastSyncEngine(Context context, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + poolSize);
+        }
+        mContext = context.getApplicationContext();
+        mForecastSync = new ForecastSync(mContext);
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new WorkerThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Result of the sync of a single location.
+     */
+    public static final class LocationResult {
+        public final String locationSetting;
+        // Count of changed days, ForecastSync.NOT_MODIFIED if nothing changed,
+        // ForecastSync.STALE if the network failed transiently, -1 on failure.
+        public final int changedDays;
+        public final long elapsedMillis;
+        public final IOException error;
+
+        LocationResult(String locationSetting, int changedDays, long elapsedMillis,
+                       IOException error) {
+            this.locationSetting = locationSetting;
+            this.changedDays = changedDays;
+            this.elapsedMillis = elapsedMillis;
+            this.error = error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Result of the sync of a set of locations, in order of completion.
+     */
+    public static final class Report {
+        public final List<LocationResult> results;
+        public final long totalMillis;
+
+        Report(List<LocationResult> results, long totalMillis) {
+            this.results = Collections.unmodifiableList(results);
+            this.totalMillis = totalMillis;
+        }
+
+        /**
+         * @return count of locations which failed to sync
+         */
+        public int getFailureCount() {
+            int failures = 0;
+            for (LocationResult result : results) {
+                if (!result.isSuccessful()) {
+                    failures++;
+                }
+            }
+            return failures;
+        }
+    }
+
+    /**
+     * Sync all locations saved in the location table. Blocks until every one is done,
+     * so call it off the main thread.
+     *
+     * @param extraLocations locations to sync first, e.g. the preferred one which may not be
+     *                       saved yet
+     * @return per-location results and total wall time
+     */
+    public Report syncSavedLocations(String... extraLocations) {
+        List<String> locations = new ArrayList<>(Arrays.asList(extraLocations));
+        locations.addAll(querySavedLocations());
+        return sync(locations);
+    }
+
+    /**
+     * Sync the given locations. Blocks until every one is done, so call it off the main thread.
+     *
+     * @param locationSettings location strings used to request updates from the server
+     * @return per-location results and total wall time
+     */
+    public Report sync(Collection<String> locationSettings) {
+        long start = SystemClock.elapsedRealtime();
+
+        // Each location is synced once even if it is given several times.
+        Set<String> locations = new LinkedHashSet<>(locationSettings);
+        CompletionService<LocationResult> completionService =
+                new ExecutorCompletionService<>(mExecutor);
+        for (final String locationSetting : locations) {
+            completionService.submit(new Callable<LocationResult>() {
+                @Override
+                public LocationResult call() {
+                    return syncLocation(locationSetting);
+                }
+            });
+        }
+
+        List<LocationResult> results = new ArrayList<>(locations.size());
+        try {
+            for (int i = 0; i < locations.size(); i++) {
+                LocationResult result = completionService.take().get();
+                Log.d(LOG_TAG, "Synced " + result.locationSetting + " in " + result.elapsedMillis
+                        + " ms" + (result.isSuccessful() ? "" : " with error: " + result.error));
+                results.add(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // syncLocation() catches everything it expects, so this is a bug.
+            throw new IllegalStateException(e.getCause());
+        }
+
+        Report report = new Report(results, SystemClock.elapsedRealtime() - start);
+        Log.d(LOG_TAG, "Synced " + results.size() + " locations in " + report.totalMillis
+                + " ms, " + report.getFailureCount() + " failed, "
+                + ForecastClient.getInstance(mContext).getTransport());
+        return report;
+    }
+
+    /**
+     * Stop the workers. Syncs which are running are finished.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    private LocationResult syncLocation(String locationSetting) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            // Nobody is watching a batch, a refresh the user asked for goes first.
+            int changedDays = mForecastSync.syncIfStale(locationSetting,
+                    TokenBucketRateLimiter.PRIORITY_BACKGROUND,
+                    CancellationToken.withTimeout(LOCATION_DEADLINE_MILLIS));
+            return new LocationResult(locationSetting, changedDays,
+                    SystemClock.elapsedRealtime() - start, null);
+        } catch (IOException e) {
+            return new LocationResult(locationSetting, -1,
+                    SystemClock.elapsedRealtime() - start, e);
+        }
+    }
+
+    private List<String> querySavedLocations() {
+        List<String> locations = new ArrayList<>();
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    locations.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Names the workers and keeps them off the UI priority.
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    android.os.Process.setThreadPriority(
+                            android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ForecastSync #" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.training.max.sunshine.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.WakefulBroadcastReceiver;
+
+/**
+ * Starts the background sync when its alarm goes off, and schedules it again after a reboot,
+ * which clears all alarms.
+ */
+public class ForecastSyncReceiver extends WakefulBroadcastReceiver {
+
+    /**
+     * Action of the periodic sync alarm.
+     */
+    public static final String ACTION_SYNC = "org.training.max.sunshine.action.SYNC";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            ForecastSyncScheduler.reschedule(context);
+        } else if (ACTION_SYNC.equals(intent.getAction())) {
+            // Keep the device awake until the service is done.
+            startWakefulService(context, new Intent(context, ForecastSyncService.class));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.training.max.sunshine.sync;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.training.max.sunshine.ForecastSettings;
+
+/**
+ * Schedules the periodic background sync of all locations according to the sync interval
+ * setting.
+ * <p>
+ * The alarm is inexact and doesn't wake the device by itself: the system batches it with the
+ * alarms of other apps, and every wake-up syncs all locations at once, see
+ * {@link ForecastSyncService}.
+ */
+public final class ForecastSyncScheduler {
+
+    private static final String LOG_TAG = ForecastSyncScheduler.class.getSimpleName();
+
+    /**
+     * We can't instantiate the utility class.
+     */
+    private ForecastSyncScheduler() {
+        // This constructor is intentionally empty. It is utility class which shouldn't be instantiated.
+    }
+
+    /**
+     * Schedule the sync unless it is already scheduled. Cheap enough to call on every app start.
+     *
+     * @param context any context
+     */
+    public static void ensureScheduled(Context context) {
+        if (createAlarmIntent(context, PendingIntent.FLAG_NO_CREATE) == null) {
+            reschedule(context);
+        }
+    }
+
+    /**
+     * Schedule the sync from now on with the current interval, or cancel it if the background
+     * sync is turned off.
+     *
+     * @param context any context
+     */
+    public static void reschedule(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        long intervalMillis = getIntervalMillis(context);
+        if (intervalMillis <= 0) {
+            PendingIntent alarmIntent = createAlarmIntent(context, PendingIntent.FLAG_NO_CREATE);
+            if (alarmIntent != null) {
+                alarmManager.cancel(alarmIntent);
+                alarmIntent.cancel();
+            }
+            Log.d(LOG_TAG, "Background sync is off");
+            return;
+        }
+
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + intervalMillis, intervalMillis,
+                createAlarmIntent(context, PendingIntent.FLAG_UPDATE_CURRENT));
+        Log.d(LOG_TAG, "Background sync every " + intervalMillis / 60000 + " minutes");
+    }
+
+    private static long getIntervalMillis(Context context) {
+        return ForecastSettings.get(context).getSyncIntervalMillis();
+    }
+
+    private static PendingIntent createAlarmIntent(Context context, int flags) {
+        Intent intent = new Intent(context, ForecastSyncReceiver.class)
+                .setAction(ForecastSyncReceiver.ACTION_SYNC);
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+}
@@ -0,0 +1,86 @@
+package org.training.max.sunshine.sync;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.support.v4.content.WakefulBroadcastReceiver;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import org.training.max.sunshine.ForecastSettings;
+
+/**
+ * Syncs the preferred location and all saved ones in one go, so the app opens from a warm
+ * local store.
+ * <p>
+ * The sync is skipped, until the next alarm, without a connection, on a metered connection
+ * if the user allows only unmetered ones, and on a low battery which isn't charging.
+ */
+public class ForecastSyncService extends IntentService {
+
+    private static final String LOG_TAG = ForecastSyncService.class.getSimpleName();
+
+    // Below that share of charge the battery is left alone.
+    private static final float LOW_BATTERY_LEVEL = 0.15f;
+
+    public ForecastSyncService() {
+        super(ForecastSyncService.class.getSimpleName());
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        try {
+            if (!canSync()) {
+                return;
+            }
+
+            String preferredLocation = ForecastSettings.get(this).getLocation();
+
+            ForecastSyncEngine engine =
+                    new ForecastSyncEngine(this, ForecastSyncEngine.DEFAULT_POOL_SIZE);
+            try {
+                ForecastSyncEngine.Report report = engine.syncSavedLocations(preferredLocation);
+                Log.d(LOG_TAG, "Background sync of " + report.results.size() + " locations, "
+                        + report.getFailureCount() + " failed");
+            } finally {
+                engine.shutdown();
+            }
+        } finally {
+            if (intent != null) {
+                WakefulBroadcastReceiver.completeWakefulIntent(intent);
+            }
+        }
+    }
+
+    private boolean canSync() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+        if (network == null || !network.isConnected()) {
+            Log.d(LOG_TAG, "Background sync skipped: no connection");
+            return false;
+        }
+
+        if (ForecastSettings.get(this).isSyncUnmeteredOnly() && ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager)) {
+            Log.d(LOG_TAG, "Background sync skipped: connection is metered");
+            return false;
+        }
+
+        // The battery status is sticky, so no receiver needs to be registered.
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            boolean charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            if (!charging && level >= 0 && scale > 0 && level / (float) scale < LOW_BATTERY_LEVEL) {
+                Log.d(LOG_TAG, "Background sync skipped: battery is low");
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,88 @@
+package org.training.max.sunshine.sync;
+
+/**
+ * Decides how long a synced forecast is fresh enough to be shown without asking the network.
+ * <p>
+ * The TTL of every location adapts to how much its syncs actually changed: a forecast which
+ * keeps coming back unchanged is asked for less and less often, one which keeps changing more
+ * often, within the bounds of the policy.
+ */
+public class FreshnessPolicy {
+
+    /**
+     * Default shortest TTL.
+     */
+    public static final long DEFAULT_MIN_TTL_MILLIS = 15 * 60 * 1000;
+
+    /**
+     * Default longest TTL.
+     */
+    public static final long DEFAULT_MAX_TTL_MILLIS = 6 * 60 * 60 * 1000;
+
+    /**
+     * TTL of a location which wasn't synced before.
+     */
+    public static final long INITIAL_TTL_MILLIS = 60 * 60 * 1000;
+
+    // Share of changed days from which the forecast is considered volatile.
+    private static final double VOLATILE_CHANGE_SHARE = 0.5;
+
+    private final long mMinTtlMillis;
+    private final long mMaxTtlMillis;
+
+    /**
+     * @param minTtlMillis shortest TTL
+     * @param maxTtlMillis longest TTL
+     */
+    public FreshnessPolicy(long minTtlMillis, long maxTtlMillis) {
+        if (minTtlMillis <= 0 || maxTtlMillis < minTtlMillis) {
+            throw new IllegalArgumentException("Invalid TTL bounds: " + minTtlMillis + ", "
+                    + maxTtlMillis);
+        }
+        mMinTtlMillis = minTtlMillis;
+        mMaxTtlMillis = maxTtlMillis;
+    }
+
+    /**
+     * @return policy with the default bounds
+     */
+    public static FreshnessPolicy createDefault() {
+        return new FreshnessPolicy(DEFAULT_MIN_TTL_MILLIS, DEFAULT_MAX_TTL_MILLIS);
+    }
+
+    /**
+     * @param lastSyncedMillis time of the last sync, 0 if there was none
+     * @param ttlMillis        TTL of the location, 0 if there is none yet
+     * @param nowMillis        current time
+     * @return 'true' if the stored forecast doesn't need a sync yet
+     */
+    public boolean isFresh(long lastSyncedMillis, long ttlMillis, long nowMillis) {
+        if (lastSyncedMillis <= 0 || nowMillis < lastSyncedMillis) {
+            // Never synced, or the clock was set back.
+            return false;
+        }
+        return nowMillis - lastSyncedMillis < clamp(ttlMillis > 0 ? ttlMillis : INITIAL_TTL_MILLIS);
+    }
+
+    /**
+     * @param ttlMillis   current TTL of the location, 0 if there is none yet
+     * @param changedDays count of days the sync changed in the store
+     * @param checkedDays count of days the sync received, 0 if the server said nothing changed
+     * @return TTL after the sync
+     */
+    public long nextTtl(long ttlMillis, int changedDays, int checkedDays) {
+        long ttl = clamp(ttlMillis > 0 ? ttlMillis : INITIAL_TTL_MILLIS);
+        if (checkedDays <= 0 || changedDays <= 0) {
+            // Nothing changed, ask less often.
+            return clamp(ttl * 2);
+        }
+        if (changedDays >= checkedDays * VOLATILE_CHANGE_SHARE) {
+            return clamp(ttl / 2);
+        }
+        return ttl;
+    }
+
+    private long clamp(long ttlMillis) {
+        return Math.max(mMinTtlMillis, Math.min(ttlMillis, mMaxTtlMillis));
+    }
+}
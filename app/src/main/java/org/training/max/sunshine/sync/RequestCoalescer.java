@@ -0,0 +1,224 @@
+package org.training.max.sunshine.sync;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.training.max.sunshine.net.CancellationToken;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Makes sure that only one request per key is executed at a time.
+ * <p>
+ * Callers which arrive while a request for the same key is running wait for it and get its
+ * result instead of starting another one. A successful result is also handed out for a short
+ * window after completion, so a burst of refreshes costs a single request.
+ * <p>
+ * The shared request runs under a token of its own, which has the deadline of the caller
+ * that started it. A caller which is cancelled stops waiting, but the request is only
+ * cancelled once every caller waiting for it is gone.
+ *
+ * @param <K> type of the request key, e.g. location setting
+ * @param <V> type of the request result
+ */
+public class RequestCoalescer<K, V> {
+
+    private static final String LOG_TAG = RequestCoalescer.class.getSimpleName();
+
+    /**
+     * Work which is shared between the coalesced callers.
+     *
+     * @param <V> type of the request result
+     */
+    public interface Request<V> {
+        /**
+         * @param token cancellation and deadline of the shared request
+         * @return result of the request, 'null' is treated as a failure and isn't shared
+         * after completion
+         * @throws IOException if the request failed
+         */
+        V execute(CancellationToken token) throws IOException;
+    }
+
+    private final Map<K, Flight<V>> mFlights = new HashMap<>();
+    private final long mWindowMillis;
+
+    /**
+     * @param windowMillis how long a successful result is handed out after completion
+     */
+    public RequestCoalescer(long windowMillis) {
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Execute the request or join the one which is running or recently completed for the key.
+     *
+     * @param key     request key
+     * @param token   cancellation and deadline of the caller
+     * @param request work to do if there is nothing to join
+     * @return result of the request
+     * @throws org.training.max.sunshine.net.CancelledException if the caller was cancelled or
+     *                                                          its deadline passed
+     * @throws IOException if the request failed
+     */
+    public V execute(K key, CancellationToken token, Request<V> request) throws IOException {
+        token.throwIfCancelled();
+
+        Flight<V> flight;
+        boolean owner = false;
+        synchronized (mFlights) {
+            flight = mFlights.get(key);
+            if (flight == null || flight.isExpired(mWindowMillis) || !flight.join()) {
+                flight = new Flight<>(token);
+                mFlights.put(key, flight);
+                owner = true;
+            }
+        }
+
+        Runnable leave = flight.newLeaveListener();
+        token.addListener(leave);
+        try {
+            if (!owner) {
+                Log.d(LOG_TAG, "Joined request for " + key);
+                try {
+                    return flight.await(token);
+                } catch (IOException e) {
+                    leave.run();
+                    throw e;
+                }
+            }
+            return executeShared(key, flight, request);
+        } finally {
+            token.removeListener(leave);
+        }
+    }
+
+    private V executeShared(K key, Flight<V> flight, Request<V> request) throws IOException {
+        V result = null;
+        IOException error = null;
+        try {
+            result = request.execute(flight.getToken());
+            return result;
+        } catch (IOException e) {
+            error = e;
+            throw e;
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+            throw e;
+        } finally {
+            synchronized (mFlights) {
+                if (result == null && mFlights.get(key) == flight) {
+                    // Failures aren't shared after completion, the next caller tries again.
+                    mFlights.remove(key);
+                }
+            }
+            flight.complete(result, error);
+        }
+    }
+
+    /**
+     * Single execution of a request, its waiting callers and its result.
+     */
+    private static final class Flight<V> {
+        private final CancellationToken mToken;
+        private int mWaiters = 1;
+        private boolean mCompleted;
+        private V mResult;
+        private IOException mError;
+        private volatile long mCompletedAt = -1;
+
+        /**
+         * @param ownerToken token of the caller which executes the request
+         */
+        Flight(CancellationToken ownerToken) {
+            long remaining = ownerToken.getRemainingMillis();
+            mToken = remaining == Long.MAX_VALUE
+                    ? CancellationToken.create()
+                    : CancellationToken.withTimeout(remaining);
+        }
+
+        CancellationToken getToken() {
+            return mToken;
+        }
+
+        /**
+         * @return 'false' if the request is being cancelled and can't be joined any more
+         */
+        synchronized boolean join() {
+            if (!mCompleted && mToken.isCancelled()) {
+                return false;
+            }
+            mWaiters++;
+            return true;
+        }
+
+        /**
+         * @return listener which takes a caller off the flight once, and cancels the request
+         * when the last one is gone
+         */
+        Runnable newLeaveListener() {
+            final AtomicBoolean left = new AtomicBoolean();
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (left.compareAndSet(false, true)) {
+                        leave();
+                    }
+                }
+            };
+        }
+
+        private void leave() {
+            boolean last;
+            synchronized (this) {
+                last = --mWaiters == 0;
+                // Wake up the waiters, the one which left stops waiting.
+                notifyAll();
+            }
+            if (last && !isCompleted()) {
+                mToken.cancel();
+            }
+        }
+
+        synchronized void complete(V result, IOException error) {
+            mResult = result;
+            mError = error;
+            mCompleted = true;
+            mCompletedAt = SystemClock.elapsedRealtime();
+            notifyAll();
+        }
+
+        synchronized boolean isCompleted() {
+            return mCompleted;
+        }
+
+        boolean isExpired(long windowMillis) {
+            long completedAt = mCompletedAt;
+            return completedAt >= 0 && SystemClock.elapsedRealtime() - completedAt >= windowMillis;
+        }
+
+        /**
+         * Wait for the result as long as the caller's token allows.
+         */
+        synchronized V await(CancellationToken token) throws IOException {
+            while (!mCompleted) {
+                token.throwIfCancelled();
+                long remaining = token.getRemainingMillis();
+                try {
+                    // Cancellation of the token wakes us up through the leave listener.
+                    wait(remaining == Long.MAX_VALUE ? 0 : Math.max(1, remaining));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a coalesced request");
+                }
+            }
+            if (mError != null) {
+                throw mError;
+            }
+            return mResult;
+        }
+    }
+}
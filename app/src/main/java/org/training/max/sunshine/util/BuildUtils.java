@@ -17,6 +17,16 @@ public final class BuildUtils {
     private static final String DAYS_PARAM = "cnt";
     private static final String APPID_PARAM = "APPID";
 
+    /**
+     * Count of forecast days requested when nothing else is asked for.
+     */
+    public static final int DEFAULT_DAY_COUNT = 14;
+
+    /**
+     * Most days the OWM daily forecast can return.
+     */
+    public static final int MAX_DAY_COUNT = 16;
+
     /**
      * We can't instantiate the utility class.
      */
@@ -36,14 +46,24 @@ public final class BuildUtils {
      * @return URL for requesting forecast. If location is 'null', then will return 'null'
      */
     public static String buildOpenWeatherMapUrlString(String location) {
+        return buildOpenWeatherMapUrlString(location, DEFAULT_DAY_COUNT);
+    }
+
+    /**
+     * Construct the URL for the OpenWeatherMap query of the given count of days,
+     * starting with the current day.
+     *
+     * @param location Specified location
+     * @param numDays  Count of forecast days, from 1 to {@link #MAX_DAY_COUNT}
+     * @return URL for requesting forecast. If location is 'null', then will return 'null'
+     */
+    public static String buildOpenWeatherMapUrlString(String location, int numDays) {
         if (location != null && !StringUtils.isEmpty(location.trim())) {
             // We use json format for our app
             final String format = "json";
             // We always get weather forecast in metric units
             final String units = "metric";
-            // TODO: Maybe should do this configurable
-            // Count of forecast days
-            final int numDays = 14;
+            numDays = Math.max(1, Math.min(numDays, MAX_DAY_COUNT));
 
             return Uri.parse(FORECAST_BASE_URL).buildUpon()
                     .appendQueryParameter(QUERY_PARAM, location.trim())
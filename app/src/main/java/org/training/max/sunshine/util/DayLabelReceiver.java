@@ -0,0 +1,20 @@
+package org.training.max.sunshine.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import org.training.max.sunshine.ForecastRowRenderer;
+
+/**
+ * Drops the day labels of {@link DayLabelFormatter}, and the rows rendered with them, when the
+ * time zone or locale of the device changes, so they are formatted again for the new one.
+ */
+public class DayLabelReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        DayLabelFormatter.getInstance().invalidate();
+        ForecastRowRenderer.getInstance().clear();
+    }
+}
@@ -0,0 +1,379 @@
+package org.training.max.sunshine.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.training.max.sunshine.util.DayMath;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The write path of a sync, from the decoded days to the rows in SQLite. An operation writes
+ * the forecasts of all locations over the stored ones, which is the steady state of a refresh.
+ * <p>
+ * {@link #bulkInsert()} is the path the sync took first: a ContentValues per row, one
+ * transaction per location, and per row the date normalization and an insert whose SQL is
+ * built from the values and which replaces the stored day. The description of every
+ * condition goes to its own table.
+ * <p>
+ * {@link #upsertCompiled()} writes the same rows the way WeatherBulkWriter does for the sync:
+ * statements compiled once per transaction, the values bound as primitives straight from the
+ * decoded columns, with dates which normalization set already, and a stored day only written
+ * if a value differs.
+ * <p>
+ * SQLite is reached through JDBC. Like SQLiteDatabase, it keeps the compiled statements by
+ * their SQL, so what is measured is the work per row rather than the cost of compiling.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkInsertBenchmark {
+
+    // The location, condition and weather tables as WeatherDbHelper creates them.
+    private static final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE location ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "city_name TEXT NOT NULL, "
+            + "location_setting TEXT UNIQUE NOT NULL, "
+            + "coord_lat REAL NOT NULL, "
+            + "coord_long REAL NOT NULL, "
+            + "last_synced INTEGER NOT NULL DEFAULT 0, "
+            + "freshness_ttl INTEGER NOT NULL DEFAULT 0);";
+
+    private static final String SQL_CREATE_CONDITION_TABLE = "CREATE TABLE condition ("
+            + "weather_id INTEGER PRIMARY KEY, "
+            + "short_desc TEXT NOT NULL);";
+
+    private static final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE weather ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + "location_id INTEGER NOT NULL, "
+            + "date INTEGER NOT NULL, "
+            + "weather_id INTEGER NOT NULL,"
+            + "min REAL NOT NULL, "
+            + "max REAL NOT NULL, "
+            + "humidity REAL NOT NULL, "
+            + "pressure REAL NOT NULL, "
+            + "wind REAL NOT NULL, "
+            + "degrees REAL NOT NULL, "
+            + " FOREIGN KEY (location_id) REFERENCES location (_id), "
+            + " UNIQUE (date, location_id));";
+
+    // SQLiteDatabase keeps that many compiled statements per connection.
+    private static final int STATEMENT_CACHE_SIZE = 25;
+
+    @Param({"1", "50"})
+    public int locationCount;
+
+    @Param({"16"})
+    public int dayCount;
+
+    private RecordedForecast[] mForecasts;
+    private long[] mLocationIds;
+    private long mToday;
+
+    private Connection mConnection;
+
+    private final Map<String, PreparedStatement> mStatements =
+            new LinkedHashMap<String, PreparedStatement>(STATEMENT_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= STATEMENT_CACHE_SIZE) {
+                        return false;
+                    }
+                    close(eldest.getValue());
+                    return true;
+                }
+            };
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        mForecasts = RecordedForecast.decodeAll(
+                ForecastPayloadGenerator.generate(locationCount, dayCount, 42));
+        mToday = System.currentTimeMillis();
+
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = mConnection.createStatement();
+        try {
+            statement.execute(SQL_CREATE_LOCATION_TABLE);
+            statement.execute(SQL_CREATE_CONDITION_TABLE);
+            statement.execute(SQL_CREATE_WEATHER_TABLE);
+        } finally {
+            statement.close();
+        }
+
+        mLocationIds = new long[locationCount];
+        PreparedStatement insertLocation = mConnection.prepareStatement("INSERT INTO location"
+                + " (city_name, location_setting, coord_lat, coord_long) VALUES (?, ?, ?, ?)");
+        try {
+            for (int i = 0; i < locationCount; i++) {
+                insertLocation.setString(1, mForecasts[i].cityName);
+                insertLocation.setString(2, "location" + i);
+                insertLocation.setDouble(3, mForecasts[i].lat);
+                insertLocation.setDouble(4, mForecasts[i].lon);
+                insertLocation.executeUpdate();
+                mLocationIds[i] = i + 1;
+            }
+        } finally {
+            insertLocation.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        for (PreparedStatement statement : mStatements.values()) {
+            close(statement);
+        }
+        mStatements.clear();
+        mConnection.close();
+    }
+
+    @Benchmark
+    public int bulkInsert() throws SQLException {
+        int returnCount = 0;
+        for (int location = 0; location < mForecasts.length; location++) {
+            returnCount += bulkInsert(toContentValues(location));
+        }
+        return returnCount;
+    }
+
+    @Benchmark
+    public int upsertCompiled() throws SQLException {
+        int changedCount = 0;
+        for (int location = 0; location < mForecasts.length; location++) {
+            changedCount += upsertCompiled(location);
+        }
+        return changedCount;
+    }
+
+    /**
+     * As WeatherBulkWriter upserts a normalized batch.
+     */
+    private int upsertCompiled(int location) throws SQLException {
+        RecordedForecast forecast = mForecasts[location];
+        long locationId = mLocationIds[location];
+        long today = DayMath.getDay(mToday, TimeZone.getDefault());
+
+        mConnection.setAutoCommit(false);
+        boolean successful = false;
+        int changedCount = 0;
+        PreparedStatement insertWeather = mConnection.prepareStatement("INSERT OR IGNORE INTO"
+                + " weather (location_id, date, weather_id, min, max, humidity, pressure, wind,"
+                + " degrees) VALUES (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, ?9)");
+        PreparedStatement updateWeather = mConnection.prepareStatement("UPDATE weather SET"
+                + " weather_id = ?3, min = ?4, max = ?5, humidity = ?6, pressure = ?7, wind = ?8,"
+                + " degrees = ?9 WHERE location_id = ?1 AND date = ?2 AND (weather_id != ?3"
+                + " OR min != ?4 OR max != ?5 OR humidity != ?6 OR pressure != ?7 OR wind != ?8"
+                + " OR degrees != ?9)");
+        PreparedStatement insertCondition = mConnection.prepareStatement(
+                "INSERT OR IGNORE INTO condition (weather_id, short_desc) VALUES (?, ?)");
+        PreparedStatement updateCondition = mConnection.prepareStatement(
+                "UPDATE condition SET short_desc = ? WHERE weather_id = ? AND short_desc != ?");
+        Map<Integer, String> storedConditions = new HashMap<>();
+        try {
+            for (int i = 0; i < forecast.size; i++) {
+                int weatherId = forecast.weatherIds[i];
+                String description = forecast.descriptions[i];
+                if (!description.equals(storedConditions.get(weatherId))) {
+                    insertCondition.setInt(1, weatherId);
+                    insertCondition.setString(2, description);
+                    insertCondition.executeUpdate();
+                    updateCondition.setString(1, description);
+                    updateCondition.setInt(2, weatherId);
+                    updateCondition.setString(3, description);
+                    updateCondition.executeUpdate();
+                    storedConditions.put(weatherId, description);
+                }
+
+                long date = DayMath.getDayStart(today + i, TimeZone.getDefault());
+                bindWeather(insertWeather, locationId, date, weatherId, forecast, i);
+                if (insertWeather.executeUpdate() > 0) {
+                    changedCount++;
+                    continue;
+                }
+                bindWeather(updateWeather, locationId, date, weatherId, forecast, i);
+                if (updateWeather.executeUpdate() > 0) {
+                    changedCount++;
+                }
+            }
+            successful = true;
+        } finally {
+            close(insertWeather);
+            close(updateWeather);
+            close(insertCondition);
+            close(updateCondition);
+            if (successful) {
+                mConnection.commit();
+            } else {
+                mConnection.rollback();
+            }
+            mConnection.setAutoCommit(true);
+        }
+        return changedCount;
+    }
+
+    private static void bindWeather(PreparedStatement statement, long locationId, long date,
+                                    int weatherId, RecordedForecast forecast, int i)
+            throws SQLException {
+        statement.setLong(1, locationId);
+        statement.setLong(2, date);
+        statement.setInt(3, weatherId);
+        statement.setDouble(4, (float) forecast.lows[i]);
+        statement.setDouble(5, (float) forecast.highs[i]);
+        statement.setDouble(6, (float) forecast.humidities[i]);
+        statement.setDouble(7, (float) forecast.pressures[i]);
+        statement.setDouble(8, (float) forecast.windSpeeds[i]);
+        statement.setDouble(9, (float) forecast.windDirections[i]);
+    }
+
+    /**
+     * As ProviderPersist built the rows. A ContentValues is a HashMap of boxed values.
+     */
+    private Map<String, Object>[] toContentValues(int location) {
+        RecordedForecast forecast = mForecasts[location];
+        @SuppressWarnings("unchecked")
+        Map<String, Object>[] rows = new Map[forecast.size];
+        for (int i = 0; i < rows.length; i++) {
+            Map<String, Object> weatherValues = new HashMap<>(10, 1.0f);
+            weatherValues.put("location_id", mLocationIds[location]);
+            weatherValues.put("date", mToday + TimeUnit.DAYS.toMillis(i));
+            weatherValues.put("humidity", (float) forecast.humidities[i]);
+            weatherValues.put("pressure", (float) forecast.pressures[i]);
+            weatherValues.put("wind", (float) forecast.windSpeeds[i]);
+            weatherValues.put("degrees", (float) forecast.windDirections[i]);
+            weatherValues.put("max", (float) forecast.highs[i]);
+            weatherValues.put("min", (float) forecast.lows[i]);
+            weatherValues.put("short_desc", forecast.descriptions[i]);
+            weatherValues.put("weather_id", forecast.weatherIds[i]);
+            rows[i] = weatherValues;
+        }
+        return rows;
+    }
+
+    /**
+     * As WeatherProvider.bulkInsert wrote the rows.
+     */
+    private int bulkInsert(Map<String, Object>[] values) throws SQLException {
+        mConnection.setAutoCommit(false);
+        boolean successful = false;
+        int returnCount = 0;
+        Map<Integer, String> storedConditions = new HashMap<>();
+        try {
+            for (Map<String, Object> value : values) {
+                value.put("date", DayMath.normalizeDate((Long) value.get("date"),
+                        TimeZone.getDefault()));
+                Map<String, Object> weatherValues = splitCondition(value, storedConditions);
+                if (insert("weather", weatherValues) != -1) {
+                    returnCount++;
+                }
+            }
+            successful = true;
+        } finally {
+            if (successful) {
+                mConnection.commit();
+            } else {
+                mConnection.rollback();
+            }
+            mConnection.setAutoCommit(true);
+        }
+        return returnCount;
+    }
+
+    /**
+     * As WeatherProvider takes the description out of the row and stores it once per
+     * weather id and transaction.
+     */
+    private Map<String, Object> splitCondition(Map<String, Object> values,
+                                               Map<Integer, String> storedConditions)
+            throws SQLException {
+        Map<String, Object> weatherValues = new HashMap<>(values);
+        String description = (String) weatherValues.remove("short_desc");
+        Integer weatherId = (Integer) weatherValues.get("weather_id");
+        if (!description.equals(storedConditions.get(weatherId))) {
+            execute("INSERT OR IGNORE INTO condition (weather_id, short_desc) VALUES (?, ?)",
+                    weatherId, description);
+            execute("UPDATE condition SET short_desc = ? WHERE weather_id = ? AND short_desc != ?",
+                    description, weatherId, description);
+            storedConditions.put(weatherId, description);
+        }
+        return weatherValues;
+    }
+
+    private void execute(String sql, Object... bindArgs) throws SQLException {
+        PreparedStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = mConnection.prepareStatement(sql);
+            mStatements.put(sql, statement);
+        }
+        for (int i = 0; i < bindArgs.length; i++) {
+            statement.setObject(i + 1, bindArgs[i]);
+        }
+        statement.executeUpdate();
+    }
+
+    /**
+     * As SQLiteDatabase.insert builds, looks up and binds the statement of a row. The stored
+     * day is replaced, as the former ON CONFLICT REPLACE of the weather table did.
+     */
+    private long insert(String table, Map<String, Object> initialValues) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT OR REPLACE");
+        sql.append(" INTO ");
+        sql.append(table);
+        sql.append('(');
+
+        int size = initialValues.size();
+        Object[] bindArgs = new Object[size];
+        int i = 0;
+        for (String colName : initialValues.keySet()) {
+            sql.append((i > 0) ? "," : "");
+            sql.append(colName);
+            bindArgs[i++] = initialValues.get(colName);
+        }
+        sql.append(')');
+        sql.append(" VALUES (");
+        for (i = 0; i < size; i++) {
+            sql.append((i > 0) ? ",?" : "?");
+        }
+        sql.append(')');
+
+        String key = sql.toString();
+        PreparedStatement statement = mStatements.get(key);
+        if (statement == null) {
+            statement = mConnection.prepareStatement(key);
+            mStatements.put(key, statement);
+        }
+        for (i = 0; i < size; i++) {
+            statement.setObject(i + 1, bindArgs[i]);
+        }
+        return statement.executeUpdate() > 0 ? 1 : -1;
+    }
+
+    private static void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The statement is dropped either way.
+        }
+    }
+}
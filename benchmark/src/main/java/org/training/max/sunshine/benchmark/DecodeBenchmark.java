@@ -0,0 +1,76 @@
+package org.training.max.sunshine.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.DayForecast;
+import org.training.max.sunshine.net.ForecastByteDecoder;
+import org.training.max.sunshine.net.ForecastHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of OWM responses as the sync does it, from the body bytes to the day events.
+ * An operation decodes the responses of all locations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+    @Param({"1", "50"})
+    public int locationCount;
+
+    @Param({"7", "16"})
+    public int dayCount;
+
+    private byte[][] mPayloads;
+
+    /**
+     * Keeps a little of every event, so nothing the decoder produces is dead code.
+     */
+    private static final class SinkHandler implements ForecastHandler {
+        double sink;
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            sink += cityName.length() + lat + lon;
+        }
+
+        @Override
+        public void onDay(DayForecast day) {
+            sink += day.weatherId + day.description.length() + day.high + day.low + day.pressure
+                    + day.humidity + day.windSpeed + day.windDirection;
+        }
+    }
+
+    private final SinkHandler mHandler = new SinkHandler();
+
+    @Setup
+    public void setUp() {
+        mPayloads = ForecastPayloadGenerator.generate(locationCount, dayCount, 42);
+    }
+
+    @Benchmark
+    public double decode() throws IOException {
+        for (byte[] payload : mPayloads) {
+            ForecastByteDecoder.parse(new ByteArrayInputStream(payload), mHandler,
+                    CancellationToken.NONE);
+        }
+        return mHandler.sink;
+    }
+}
@@ -0,0 +1,133 @@
+package org.training.max.sunshine.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates OWM daily forecast responses for any number of locations and days.
+ * <p>
+ * The responses look like the ones OWM serves: all members of the real response in the same
+ * order, temperatures and pressures with the decimals OWM sends, rain on some days only, and
+ * conditions, cities and their names, some of them not ASCII, from a realistic mix. The same
+ * seed always gives the same bytes, so results of different runs compare.
+ */
+public final class ForecastPayloadGenerator {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    // Monday, June 3rd 2013, noon UTC.
+    private static final long FIRST_DAY_SECONDS = 1370260800L;
+
+    // Name, country, latitude, longitude and mean temperature of the cities. Names are in the
+    // local script, escaped: Moscow, Sao Paulo, Munich, Tokyo, Reykjavik and Krakow.
+    private static final Object[][] CITIES = {
+            {"Mountain View", "US", 37.3861, -122.0838, 18.0},
+            {"\u041c\u043e\u0441\u043a\u0432\u0430", "RU", 55.7522, 37.6156, 7.0},
+            {"S\u00e3o Paulo", "BR", -23.5475, -46.6361, 21.0},
+            {"M\u00fcnchen", "DE", 48.1374, 11.5755, 10.0},
+            {"\u6771\u4eac", "JP", 35.6895, 139.6917, 16.0},
+            {"Reykjav\u00edk", "IS", 64.1355, -21.8954, 5.0},
+            {"Cairo", "EG", 30.0626, 31.2497, 23.0},
+            {"Yakutsk", "RU", 62.0339, 129.7331, -9.0},
+            {"Sydney", "AU", -33.8679, 151.2073, 18.0},
+            {"Krak\u00f3w", "PL", 50.0833, 19.9167, 9.0}
+    };
+
+    // Weather code, main, description and icon of the conditions OWM reports most.
+    private static final Object[][] CONDITIONS = {
+            {800, "Clear", "sky is clear", "01d"},
+            {801, "Clouds", "few clouds", "02d"},
+            {802, "Clouds", "scattered clouds", "03d"},
+            {803, "Clouds", "broken clouds", "04d"},
+            {804, "Clouds", "overcast clouds", "04d"},
+            {500, "Rain", "light rain", "10d"},
+            {501, "Rain", "moderate rain", "10d"},
+            {502, "Rain", "heavy intensity rain", "10d"},
+            {300, "Drizzle", "light intensity drizzle", "09d"},
+            {600, "Snow", "light snow", "13d"},
+            {601, "Snow", "snow", "13d"},
+            {211, "Thunderstorm", "thunderstorm", "11d"},
+            {701, "Mist", "mist", "50d"}
+    };
+
+    /**
+     * We can't instantiate the utility class.
+     */
+    private ForecastPayloadGenerator() {
+        // This constructor is intentionally empty. It is utility class which shouldn't be instantiated.
+    }
+
+    /**
+     * @param locationCount count of locations, one response each
+     * @param dayCount      count of days in every response
+     * @param seed          seed of the values
+     * @return UTF-8 bodies of the responses, by location
+     */
+    public static byte[][] generate(int locationCount, int dayCount, long seed) {
+        Random random = new Random(seed);
+        byte[][] payloads = new byte[locationCount][];
+        for (int i = 0; i < locationCount; i++) {
+            payloads[i] = generateLocation(i, dayCount, random).getBytes(UTF_8);
+        }
+        return payloads;
+    }
+
+    private static String generateLocation(int location, int dayCount, Random random) {
+        Object[] city = CITIES[location % CITIES.length];
+        double meanTemperature = (Double) city[4];
+        // Locations beyond the table are the same cities a little further away.
+        double shift = location / CITIES.length * 0.01;
+
+        StringBuilder json = new StringBuilder(256 + dayCount * 320);
+        json.append("{\"city\":{\"id\":").append(5375480 + location)
+                .append(",\"name\":\"").append(city[0])
+                .append("\",\"coord\":{\"lon\":").append(decimal((Double) city[3] + shift, 4))
+                .append(",\"lat\":").append(decimal((Double) city[2] + shift, 4))
+                .append("},\"country\":\"").append(city[1])
+                .append("\",\"population\":").append(50000 + random.nextInt(10000000))
+                .append("},\"cod\":\"200\",\"message\":").append(decimal(random.nextDouble(), 7))
+                .append(",\"cnt\":").append(dayCount)
+                .append(",\"list\":[");
+
+        for (int day = 0; day < dayCount; day++) {
+            double max = meanTemperature + 4 + random.nextGaussian() * 5;
+            double min = max - 3 - random.nextDouble() * 9;
+            Object[] condition = CONDITIONS[random.nextInt(CONDITIONS.length)];
+            int weatherId = (Integer) condition[0];
+
+            if (day > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(FIRST_DAY_SECONDS + day * DAY_SECONDS)
+                    .append(",\"temp\":{\"day\":").append(decimal(max - 1.5, 2))
+                    .append(",\"min\":").append(decimal(min, 2))
+                    .append(",\"max\":").append(decimal(max, 2))
+                    .append(",\"night\":").append(decimal(min + 1.2, 2))
+                    .append(",\"eve\":").append(decimal(max - 2.4, 2))
+                    .append(",\"morn\":").append(decimal(min + 0.3, 2))
+                    .append("},\"pressure\":").append(decimal(1013 + random.nextGaussian() * 8, 2))
+                    .append(",\"humidity\":").append(30 + random.nextInt(70))
+                    .append(",\"weather\":[{\"id\":").append(weatherId)
+                    .append(",\"main\":\"").append(condition[1])
+                    .append("\",\"description\":\"").append(condition[2])
+                    .append("\",\"icon\":\"").append(condition[3])
+                    .append("\"}],\"speed\":").append(decimal(random.nextDouble() * 12, 2))
+                    .append(",\"deg\":").append(random.nextInt(360))
+                    .append(",\"clouds\":").append(random.nextInt(101));
+            if (weatherId < 700) {
+                json.append(weatherId >= 600 ? ",\"snow\":" : ",\"rain\":")
+                        .append(decimal(random.nextDouble() * 10, 2));
+            }
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String decimal(double value, int decimals) {
+        return String.format(Locale.US, "%." + decimals + "f", value);
+    }
+}
@@ -0,0 +1,94 @@
+package org.training.max.sunshine.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.training.max.sunshine.util.DayLabelFormatter;
+import org.training.max.sunshine.util.TemperatureFormatter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting of the list rows of all locations: the day label, the high/lows and the whole
+ * text of a row as the ForecastRowRenderer builds it when a row isn't cached.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+
+    @Param({"1", "50"})
+    public int locationCount;
+
+    @Param({"16"})
+    public int dayCount;
+
+    @Param({"false", "true"})
+    public boolean imperial;
+
+    private RecordedForecast[] mForecasts;
+    private long[] mDates;
+
+    @Setup
+    public void setUp() throws IOException {
+        mForecasts = RecordedForecast.decodeAll(
+                ForecastPayloadGenerator.generate(locationCount, dayCount, 42));
+        // Stored days start today, which is where the labels are kept.
+        long now = System.currentTimeMillis();
+        mDates = new long[dayCount];
+        for (int i = 0; i < dayCount; i++) {
+            mDates[i] = now + TimeUnit.DAYS.toMillis(i);
+        }
+    }
+
+    @Benchmark
+    public int formatHighLows() {
+        int length = 0;
+        for (RecordedForecast forecast : mForecasts) {
+            for (int i = 0; i < forecast.size; i++) {
+                length += TemperatureFormatter.formatHighLows(forecast.highs[i],
+                        forecast.lows[i], imperial).length();
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int formatDayLabel() {
+        DayLabelFormatter formatter = DayLabelFormatter.getInstance();
+        int length = 0;
+        for (RecordedForecast forecast : mForecasts) {
+            for (int i = 0; i < forecast.size; i++) {
+                length += formatter.format(mDates[i]).length();
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int formatRow() {
+        DayLabelFormatter formatter = DayLabelFormatter.getInstance();
+        int length = 0;
+        for (RecordedForecast forecast : mForecasts) {
+            for (int i = 0; i < forecast.size; i++) {
+                String text = formatter.format(mDates[i]) + " - " + forecast.descriptions[i]
+                        + " - " + TemperatureFormatter.formatHighLows(forecast.highs[i],
+                        forecast.lows[i], imperial);
+                length += text.length();
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,107 @@
+package org.training.max.sunshine.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.training.max.sunshine.sync.ForecastBatch;
+import org.training.max.sunshine.util.DayMath;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date normalization of the days of all locations: as WeatherContract.normalizeDate does it
+ * for every row written through the WeatherProvider, and as the sync dates a batch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NormalizeBenchmark {
+
+    @Param({"1", "50"})
+    public int locationCount;
+
+    @Param({"16"})
+    public int dayCount;
+
+    @Param({"UTC", "Europe/Moscow", "America/Los_Angeles"})
+    public String timeZoneId;
+
+    private long[] mDates;
+    private TimeZone mTimeZone;
+    private ForecastBatch[] mBatches;
+
+    @Setup
+    public void setUp() {
+        mTimeZone = TimeZone.getTimeZone(timeZoneId);
+        TimeZone.setDefault(mTimeZone);
+
+        // Days from today on, at the time of day the sync happened to run.
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        mDates = new long[locationCount * dayCount];
+        for (int i = 0; i < mDates.length; i++) {
+            mDates[i] = now + TimeUnit.DAYS.toMillis(i % dayCount)
+                    + random.nextInt((int) TimeUnit.HOURS.toMillis(6));
+        }
+
+        mBatches = new ForecastBatch[locationCount];
+        for (int i = 0; i < locationCount; i++) {
+            mBatches[i] = new ForecastBatch("location" + i);
+            for (int day = 0; day < dayCount; day++) {
+                mBatches[i].addDay(800, "Clear", 20, 10, 1013, 50, 2, 90);
+            }
+        }
+    }
+
+    /**
+     * As the provider normalizes, with a look up of the default time zone per row.
+     */
+    @Benchmark
+    public long normalizeDate() {
+        long sum = 0;
+        for (long date : mDates) {
+            sum += DayMath.normalizeDate(date, TimeZone.getDefault());
+        }
+        return sum;
+    }
+
+    /**
+     * With the time zone looked up once for all rows.
+     */
+    @Benchmark
+    public long normalizeDateSharedTimeZone() {
+        TimeZone timeZone = mTimeZone;
+        long sum = 0;
+        for (long date : mDates) {
+            sum += DayMath.normalizeDate(date, timeZone);
+        }
+        return sum;
+    }
+
+    /**
+     * As the sync dates the days of a batch, from the day of the current time on.
+     */
+    @Benchmark
+    public long setDatesFrom() {
+        long now = System.currentTimeMillis();
+        long sum = 0;
+        for (ForecastBatch batch : mBatches) {
+            batch.setDatesFrom(now, TimeZone.getDefault());
+            sum += batch.getDate(batch.size() - 1);
+        }
+        return sum;
+    }
+}
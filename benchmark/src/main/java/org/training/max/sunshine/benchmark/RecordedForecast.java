@@ -0,0 +1,74 @@
+package org.training.max.sunshine.benchmark;
+
+import org.training.max.sunshine.net.CancellationToken;
+import org.training.max.sunshine.net.DayForecast;
+import org.training.max.sunshine.net.ForecastByteDecoder;
+import org.training.max.sunshine.net.ForecastHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decoded forecast of one location, the input of the benchmarks which start after decoding.
+ */
+final class RecordedForecast implements ForecastHandler {
+
+    String cityName;
+    double lat;
+    double lon;
+
+    int size;
+    int[] weatherIds = new int[16];
+    String[] descriptions = new String[16];
+    double[] highs = new double[16];
+    double[] lows = new double[16];
+    double[] pressures = new double[16];
+    int[] humidities = new int[16];
+    double[] windSpeeds = new double[16];
+    double[] windDirections = new double[16];
+
+    /**
+     * @return the decoded payloads, by location
+     */
+    static RecordedForecast[] decodeAll(byte[][] payloads) throws IOException {
+        RecordedForecast[] forecasts = new RecordedForecast[payloads.length];
+        for (int i = 0; i < payloads.length; i++) {
+            forecasts[i] = new RecordedForecast();
+            ForecastByteDecoder.parse(new ByteArrayInputStream(payloads[i]), forecasts[i],
+                    CancellationToken.NONE);
+        }
+        return forecasts;
+    }
+
+    @Override
+    public void onCity(String cityName, double lat, double lon) {
+        this.cityName = cityName;
+        this.lat = lat;
+        this.lon = lon;
+    }
+
+    @Override
+    public void onDay(DayForecast day) {
+        if (size == weatherIds.length) {
+            int capacity = size * 2;
+            weatherIds = Arrays.copyOf(weatherIds, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            pressures = Arrays.copyOf(pressures, capacity);
+            humidities = Arrays.copyOf(humidities, capacity);
+            windSpeeds = Arrays.copyOf(windSpeeds, capacity);
+            windDirections = Arrays.copyOf(windDirections, capacity);
+        }
+        weatherIds[size] = day.weatherId;
+        descriptions[size] = day.description;
+        highs[size] = day.high;
+        lows[size] = day.low;
+        pressures[size] = day.pressure;
+        humidities[size] = day.humidity;
+        windSpeeds[size] = day.windSpeed;
+        windDirections[size] = day.windDirection;
+        size++;
+    }
+}
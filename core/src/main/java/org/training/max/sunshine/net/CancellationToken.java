@@ -0,0 +1,141 @@
+package org.training.max.sunshine.net;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancellation and deadline of a single forecast refresh.
+ * <p>
+ * The refresh checks the token between units of work: socket reads, parsed days and the store
+ * transaction. Work which blocks, like a socket read, registers a listener which aborts it
+ * as soon as the token is cancelled. A passed deadline counts as cancellation; blocking work
+ * bounds its timeouts by {@link #getRemainingMillis()} instead of being notified.
+ */
+public class CancellationToken {
+
+    /**
+     * Token which is never cancelled and has no deadline.
+     */
+    public static final CancellationToken NONE = new CancellationToken(false, 0);
+
+    private final boolean mHasDeadline;
+    private final long mDeadlineNanos;
+    private final List<Runnable> mListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean mCancelled;
+
+    private CancellationToken(boolean hasDeadline, long deadlineNanos) {
+        mHasDeadline = hasDeadline;
+        mDeadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return token which is only cancelled by {@link #cancel()}
+     */
+    public static CancellationToken create() {
+        return new CancellationToken(false, 0);
+    }
+
+    /**
+     * @param timeoutMillis time from now the work must be done in
+     * @return token which is also cancelled once the timeout passed
+     */
+    public static CancellationToken withTimeout(long timeoutMillis) {
+        return new CancellationToken(true,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    /**
+     * Cancel the work and abort what is blocked in it. Has no effect on {@link #NONE}.
+     */
+    public void cancel() {
+        if (this == NONE) {
+            return;
+        }
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            notifyAll();
+        }
+        for (Runnable listener : mListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return 'true' if the work was cancelled or its deadline passed
+     */
+    public boolean isCancelled() {
+        return mCancelled || (mHasDeadline && System.nanoTime() - mDeadlineNanos >= 0);
+    }
+
+    /**
+     * @return time left until the deadline, {@link Long#MAX_VALUE} if there is no deadline
+     */
+    public long getRemainingMillis() {
+        if (!mHasDeadline) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(mDeadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * @throws CancelledException if the work was cancelled or its deadline passed
+     */
+    public void throwIfCancelled() throws CancelledException {
+        if (mCancelled) {
+            throw new CancelledException("Refresh was cancelled");
+        }
+        if (isCancelled()) {
+            throw new CancelledException("Refresh deadline exceeded");
+        }
+    }
+
+    /**
+     * Wait unless the work is cancelled meanwhile.
+     *
+     * @param millis time to wait
+     * @throws CancelledException if the work was cancelled or the deadline passes before
+     */
+    public void sleep(long millis) throws CancelledException {
+        if (millis > getRemainingMillis()) {
+            throw new CancelledException("Refresh deadline exceeded");
+        }
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        synchronized (this) {
+            long left;
+            while (!mCancelled && (left = end - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancelledException("Interrupted while waiting");
+                }
+            }
+        }
+        throwIfCancelled();
+    }
+
+    /**
+     * @param listener called on the thread which cancels, right away if already cancelled.
+     *                 It must not block.
+     */
+    public void addListener(Runnable listener) {
+        if (this == NONE) {
+            return;
+        }
+        mListeners.add(listener);
+        if (mCancelled) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @param listener listener added before
+     */
+    public void removeListener(Runnable listener) {
+        mListeners.remove(listener);
+    }
+}
@@ -0,0 +1,16 @@
+package org.training.max.sunshine.net;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a refresh stops because its {@link CancellationToken} was cancelled
+ * or its deadline passed.
+ */
+public class CancelledException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,32 @@
+package org.training.max.sunshine.net;
+
+/**
+ * Values of a single forecast day. One instance is reused for the whole response.
+ */
+public final class DayForecast {
+    // Position of the day in the response, the first day is always the current day.
+    public int index;
+
+    public double pressure;
+    public int humidity;
+    public double windSpeed;
+    public double windDirection;
+
+    public double high;
+    public double low;
+
+    public String description;
+    public int weatherId;
+
+    void reset(int dayIndex) {
+        index = dayIndex;
+        pressure = 0;
+        humidity = 0;
+        windSpeed = 0;
+        windDirection = 0;
+        high = 0;
+        low = 0;
+        description = null;
+        weatherId = 0;
+    }
+}
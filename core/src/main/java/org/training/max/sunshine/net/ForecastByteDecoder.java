@@ -0,0 +1,749 @@
+package org.training.max.sunshine.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decoder for the OpenWeatherMap daily forecast response which tokenizes the JSON straight
+ * from its UTF-8 bytes.
+ * <p>
+ * The body is read into a byte buffer which is kept by the thread and reused for every
+ * response, and names are matched against their encoded bytes. Strings are only created for
+ * the values which are kept: the city name and the weather description. Numbers are parsed
+ * from the bytes as well. It emits the same events as the JsonReader based parser the app's
+ * tests check it against.
+ */
+public final class ForecastByteDecoder {
+
+    // Big enough for a full 16 day response, so a read rarely has to move a token.
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // A buffer which grew for an odd response beyond this isn't kept for the next one.
+    private static final int MAX_KEPT_BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] OWM_CITY = ascii("city");
+    private static final byte[] OWM_CITY_NAME = ascii("name");
+    private static final byte[] OWM_COORD = ascii("coord");
+    private static final byte[] OWM_LATITUDE = ascii("lat");
+    private static final byte[] OWM_LONGITUDE = ascii("lon");
+    private static final byte[] OWM_LIST = ascii("list");
+    private static final byte[] OWM_PRESSURE = ascii("pressure");
+    private static final byte[] OWM_HUMIDITY = ascii("humidity");
+    private static final byte[] OWM_WINDSPEED = ascii("speed");
+    private static final byte[] OWM_WIND_DIRECTION = ascii("deg");
+    private static final byte[] OWM_TEMPERATURE = ascii("temp");
+    private static final byte[] OWM_MAX = ascii("max");
+    private static final byte[] OWM_MIN = ascii("min");
+    private static final byte[] OWM_WEATHER = ascii("weather");
+    private static final byte[] OWM_DESCRIPTION = ascii("main");
+    private static final byte[] OWM_WEATHER_ID = ascii("id");
+
+    // Names of the members we read, by object. The index of the matched name is returned.
+    private static final byte[][] FORECAST_NAMES = {OWM_CITY, OWM_LIST};
+    private static final byte[][] CITY_NAMES = {OWM_CITY_NAME, OWM_COORD};
+    private static final byte[][] COORD_NAMES = {OWM_LATITUDE, OWM_LONGITUDE};
+    private static final byte[][] DAY_NAMES = {OWM_PRESSURE, OWM_HUMIDITY, OWM_WINDSPEED,
+            OWM_WIND_DIRECTION, OWM_TEMPERATURE, OWM_WEATHER};
+    private static final byte[][] TEMPERATURE_NAMES = {OWM_MAX, OWM_MIN};
+    private static final byte[][] WEATHER_NAMES = {OWM_DESCRIPTION, OWM_WEATHER_ID};
+    private static final byte[][] NO_NAMES = {};
+
+    // Powers of ten which are exact doubles.
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private static final ThreadLocal<ForecastByteDecoder> sDecoders =
+            new ThreadLocal<ForecastByteDecoder>() {
+                @Override
+                protected ForecastByteDecoder initialValue() {
+                    return new ForecastByteDecoder();
+                }
+            };
+
+    private final CharsetDecoder mUtf8Decoder = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final DayForecast mDay = new DayForecast();
+
+    // A heap buffer on purpose: the body comes from an InputStream, which only reads into an
+    // array, and the tokenizer indexes that array. A direct buffer has no array to hand out,
+    // so every read would be copied into it and every byte fetched through get().
+    private ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private CharBuffer mChars = CharBuffer.allocate(64);
+    private byte[] mBytes = mBuffer.array();
+
+    private InputStream mInput;
+    // Next byte to read and end of the bytes read so far.
+    private int mPos;
+    private int mLimit;
+    // Start of the token being read, it is kept in the buffer while reading more. -1 if none.
+    private int mMark = -1;
+    private boolean mStringHasEscapes;
+
+    private ForecastByteDecoder() {
+    }
+
+    /**
+     * Parse the forecast response and emit its rows to the handler while reading.
+     * The token is checked before every day.
+     *
+     * @param inputStream response body, it isn't closed here
+     * @param handler     receiver of the decoded city and days
+     * @param token       cancellation of the refresh
+     * @return count of the days which were emitted
+     * @throws CancelledException if the refresh was cancelled or its deadline passed
+     * @throws IOException if the stream can't be read or doesn't contain a valid forecast
+     */
+    public static int parse(InputStream inputStream, ForecastHandler handler,
+                            CancellationToken token) throws IOException {
+        ForecastByteDecoder decoder = sDecoders.get();
+        decoder.begin(inputStream);
+        try {
+            return decoder.readForecast(handler, token);
+        } finally {
+            decoder.end();
+        }
+    }
+
+    private void begin(InputStream inputStream) {
+        mInput = inputStream;
+        mPos = 0;
+        mLimit = 0;
+        mMark = -1;
+    }
+
+    private void end() {
+        mInput = null;
+        if (mBytes.length > MAX_KEPT_BUFFER_SIZE) {
+            mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            mBytes = mBuffer.array();
+        }
+    }
+
+    private int readForecast(ForecastHandler handler, CancellationToken token)
+            throws IOException {
+        int dayCount = 0;
+        if (beginObject()) {
+            do {
+                switch (nextName(FORECAST_NAMES)) {
+                    case 0:
+                        readCity(handler);
+                        break;
+                    case 1:
+                        dayCount = readList(handler, token);
+                        break;
+                    default:
+                        skipValue();
+                }
+            } while (hasNextMember('}'));
+        }
+        return dayCount;
+    }
+
+    private void readCity(ForecastHandler handler) throws IOException {
+        String cityName = null;
+        double lat = 0;
+        double lon = 0;
+
+        if (beginObject()) {
+            do {
+                switch (nextName(CITY_NAMES)) {
+                    case 0:
+                        cityName = nextString();
+                        break;
+                    case 1:
+                        if (beginObject()) {
+                            do {
+                                switch (nextName(COORD_NAMES)) {
+                                    case 0:
+                                        lat = nextDouble();
+                                        break;
+                                    case 1:
+                                        lon = nextDouble();
+                                        break;
+                                    default:
+                                        skipValue();
+                                }
+                            } while (hasNextMember('}'));
+                        }
+                        break;
+                    default:
+                        skipValue();
+                }
+            } while (hasNextMember('}'));
+        }
+
+        handler.onCity(cityName, lat, lon);
+    }
+
+    private int readList(ForecastHandler handler, CancellationToken token)
+            throws IOException {
+        int dayIndex = 0;
+        if (beginArray()) {
+            do {
+                token.throwIfCancelled();
+                mDay.reset(dayIndex);
+                readDay(mDay);
+                if (mDay.description == null) {
+                    throw new IOException("Forecast day " + dayIndex + " has no weather description");
+                }
+                handler.onDay(mDay);
+                dayIndex++;
+            } while (hasNextMember(']'));
+        }
+        return dayIndex;
+    }
+
+    private void readDay(DayForecast day) throws IOException {
+        if (!beginObject()) {
+            return;
+        }
+        do {
+            switch (nextName(DAY_NAMES)) {
+                case 0:
+                    day.pressure = nextDouble();
+                    break;
+                case 1:
+                    day.humidity = nextInt();
+                    break;
+                case 2:
+                    day.windSpeed = nextDouble();
+                    break;
+                case 3:
+                    day.windDirection = nextDouble();
+                    break;
+                case 4:
+                    readTemperature(day);
+                    break;
+                case 5:
+                    readWeather(day);
+                    break;
+                default:
+                    skipValue();
+            }
+        } while (hasNextMember('}'));
+    }
+
+    private void readTemperature(DayForecast day) throws IOException {
+        if (!beginObject()) {
+            return;
+        }
+        do {
+            switch (nextName(TEMPERATURE_NAMES)) {
+                case 0:
+                    day.high = nextDouble();
+                    break;
+                case 1:
+                    day.low = nextDouble();
+                    break;
+                default:
+                    skipValue();
+            }
+        } while (hasNextMember('}'));
+    }
+
+    /**
+     * Description is in a child array called "weather", which is 1 element long.
+     * That element also contains a weather code.
+     */
+    private void readWeather(DayForecast day) throws IOException {
+        if (!beginArray()) {
+            return;
+        }
+        boolean first = true;
+        do {
+            if (!first || peekToken() != '{') {
+                skipValue();
+                continue;
+            }
+            first = false;
+
+            if (beginObject()) {
+                do {
+                    switch (nextName(WEATHER_NAMES)) {
+                        case 0:
+                            day.description = nextString();
+                            break;
+                        case 1:
+                            day.weatherId = nextInt();
+                            break;
+                        default:
+                            skipValue();
+                    }
+                } while (hasNextMember('}'));
+            }
+        } while (hasNextMember(']'));
+    }
+
+    // Structure
+
+    /**
+     * @return 'true' if the object has members, otherwise its end is consumed as well
+     */
+    private boolean beginObject() throws IOException {
+        expect('{');
+        if (peekToken() == '}') {
+            mPos++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 'true' if the array has elements, otherwise its end is consumed as well
+     */
+    private boolean beginArray() throws IOException {
+        expect('[');
+        if (peekToken() == ']') {
+            mPos++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Consume the separator after a member or element.
+     *
+     * @param close end of the object or array
+     * @return 'true' if another member or element follows, 'false' at the end
+     */
+    private boolean hasNextMember(char close) throws IOException {
+        int c = nextToken();
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw syntaxError("Expected ',' or '" + close + "'");
+    }
+
+    /**
+     * Read the name of a member and its colon.
+     *
+     * @param names names the caller reads
+     * @return index of the name, -1 for any other name
+     */
+    private int nextName(byte[][] names) throws IOException {
+        expect('"');
+        readStringBytes();
+        int length = mPos - 1 - mMark;
+        int found = -1;
+        if (!mStringHasEscapes) {
+            for (int i = 0; i < names.length && found < 0; i++) {
+                if (regionEquals(names[i], length)) {
+                    found = i;
+                }
+            }
+        }
+        mMark = -1;
+        expect(':');
+        return found;
+    }
+
+    private boolean regionEquals(byte[] name, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mBytes[mMark + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipValue() throws IOException {
+        int c = peekToken();
+        switch (c) {
+            case '{':
+                if (beginObject()) {
+                    do {
+                        nextName(NO_NAMES);
+                        skipValue();
+                    } while (hasNextMember('}'));
+                }
+                break;
+            case '[':
+                if (beginArray()) {
+                    do {
+                        skipValue();
+                    } while (hasNextMember(']'));
+                }
+                break;
+            case '"':
+                mPos++;
+                skipStringBytes();
+                break;
+            default:
+                // A number or a literal.
+                int length = 0;
+                while (!isDelimiter(peek())) {
+                    mPos++;
+                    length++;
+                }
+                if (length == 0) {
+                    throw syntaxError("Expected a value");
+                }
+        }
+    }
+
+    // Values
+
+    private String nextString() throws IOException {
+        int c = peekToken();
+        if (c == 'n') {
+            skipValue();
+            return null;
+        }
+        expect('"');
+        readStringBytes();
+        try {
+            return decodeString(mMark, mPos - 1);
+        } finally {
+            mMark = -1;
+        }
+    }
+
+    private int nextInt() throws IOException {
+        double value = nextDouble();
+        int intValue = (int) value;
+        if (intValue != value) {
+            throw syntaxError("Expected an int but was " + value);
+        }
+        return intValue;
+    }
+
+    private double nextDouble() throws IOException {
+        try {
+            if (peekToken() == '"') {
+                // A quoted number, which JsonReader accepts as well.
+                mPos++;
+                readStringBytes();
+                return parseDouble(mMark, mPos - 1);
+            }
+            mMark = mPos;
+            while (!isDelimiter(peek())) {
+                mPos++;
+            }
+            return parseDouble(mMark, mPos);
+        } finally {
+            mMark = -1;
+        }
+    }
+
+    /**
+     * Parse the number in the bytes. Numbers of up to 15 digits with a small exponent, which
+     * is all OWM sends, are computed exactly from their digits; others go through
+     * {@link Double#parseDouble}.
+     */
+    private double parseDouble(int start, int end) throws IOException {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (mBytes[i] == '-' || mBytes[i] == '+')) {
+            negative = mBytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        boolean hasDigits = false;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean exact = true;
+        for (; i < end; i++) {
+            byte b = mBytes[i];
+            if (b >= '0' && b <= '9') {
+                hasDigits = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (fraction) {
+                        scale++;
+                    }
+                } else {
+                    exact = false;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else if (b == 'e' || b == 'E') {
+                break;
+            } else {
+                throw syntaxError("Malformed number");
+            }
+        }
+
+        if (!hasDigits) {
+            throw syntaxError("Expected a number");
+        }
+
+        if (i < end) {
+            // Exponent.
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (mBytes[i] == '-' || mBytes[i] == '+')) {
+                negativeExponent = mBytes[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                throw syntaxError("Malformed number");
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                byte b = mBytes[i];
+                if (b < '0' || b > '9') {
+                    throw syntaxError("Malformed number");
+                }
+                exponent = Math.min(exponent * 10 + (b - '0'), 1000);
+            }
+            scale += negativeExponent ? exponent : -exponent;
+        }
+
+        if (!exact || digits > 15 || scale < 0 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(mBytes, start, end - start, "US-ASCII"));
+        }
+        // Both are exact doubles, so a single division is correctly rounded.
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decode the UTF-8 bytes of a string value, resolving its escapes.
+     */
+    private String decodeString(int start, int end) throws IOException {
+        mChars.clear();
+        int segmentStart = start;
+        int i = start;
+        while (i < end) {
+            if (mBytes[i] != '\\') {
+                i++;
+                continue;
+            }
+            decodeUtf8(segmentStart, i);
+            i++;
+            char escaped;
+            switch (mBytes[i]) {
+                case 'u':
+                    if (i + 4 >= end) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    escaped = (char) ((hexDigit(mBytes[i + 1]) << 12) | (hexDigit(mBytes[i + 2]) << 8)
+                            | (hexDigit(mBytes[i + 3]) << 4) | hexDigit(mBytes[i + 4]));
+                    i += 4;
+                    break;
+                case 't':
+                    escaped = '\t';
+                    break;
+                case 'b':
+                    escaped = '\b';
+                    break;
+                case 'n':
+                    escaped = '\n';
+                    break;
+                case 'r':
+                    escaped = '\r';
+                    break;
+                case 'f':
+                    escaped = '\f';
+                    break;
+                default:
+                    escaped = (char) mBytes[i];
+            }
+            ensureChars(1);
+            mChars.put(escaped);
+            i++;
+            segmentStart = i;
+        }
+        decodeUtf8(segmentStart, end);
+        return new String(mChars.array(), 0, mChars.position());
+    }
+
+    private void decodeUtf8(int start, int end) throws IOException {
+        if (start == end) {
+            return;
+        }
+        mBuffer.limit(end);
+        mBuffer.position(start);
+        mUtf8Decoder.reset();
+        while (true) {
+            CoderResult result = mUtf8Decoder.decode(mBuffer, mChars, true);
+            if (result.isOverflow()) {
+                ensureChars(end - mBuffer.position());
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        mBuffer.clear();
+    }
+
+    private void ensureChars(int count) {
+        if (mChars.remaining() < count) {
+            CharBuffer chars = CharBuffer.allocate(
+                    Math.max(mChars.capacity() * 2, mChars.position() + count));
+            mChars.flip();
+            chars.put(mChars);
+            mChars = chars;
+        }
+    }
+
+    private int hexDigit(byte b) throws IOException {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        throw syntaxError("Malformed escape sequence");
+    }
+
+    // Bytes
+
+    /**
+     * Find the end of a string whose opening quote was consumed. Its bytes start at the mark,
+     * and its closing quote is just before the position.
+     */
+    private void readStringBytes() throws IOException {
+        mMark = mPos;
+        mStringHasEscapes = false;
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                mStringHasEscapes = true;
+                next();
+            }
+        }
+    }
+
+    private void skipStringBytes() throws IOException {
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (nextToken() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+    }
+
+    /**
+     * @return next byte which isn't whitespace, it is consumed
+     */
+    private int nextToken() throws IOException {
+        int c = peekToken();
+        if (c < 0) {
+            throw new EOFException("End of input");
+        }
+        mPos++;
+        return c;
+    }
+
+    /**
+     * @return next byte which isn't whitespace, -1 at the end of the stream
+     */
+    private int peekToken() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            mPos++;
+        }
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c < 0) {
+            throw new EOFException("End of input");
+        }
+        mPos++;
+        return c;
+    }
+
+    /**
+     * @return next byte, -1 at the end of the stream
+     */
+    private int peek() throws IOException {
+        if (mPos >= mLimit && !fill()) {
+            return -1;
+        }
+        return mBytes[mPos] & 0xff;
+    }
+
+    /**
+     * Read more of the stream into the buffer. The token from the mark on, if any, is moved
+     * to the start of the buffer, which grows if the token fills it.
+     *
+     * @return 'false' at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        int keepFrom = mMark >= 0 ? mMark : mPos;
+        if (keepFrom > 0) {
+            System.arraycopy(mBytes, keepFrom, mBytes, 0, mLimit - keepFrom);
+            mLimit -= keepFrom;
+            mPos -= keepFrom;
+            if (mMark >= 0) {
+                mMark -= keepFrom;
+            }
+        }
+        if (mLimit == mBytes.length) {
+            ByteBuffer buffer = ByteBuffer.allocate(mBytes.length * 2);
+            System.arraycopy(mBytes, 0, buffer.array(), 0, mLimit);
+            mBuffer = buffer;
+            mBytes = buffer.array();
+        }
+
+        int count = mInput.read(mBytes, mLimit, mBytes.length - mLimit);
+        if (count <= 0) {
+            return false;
+        }
+        mLimit += count;
+        return true;
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c < 0 || c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r'
+                || c == '\t' || c == ':';
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at byte " + mPos);
+    }
+
+    private static byte[] ascii(String name) {
+        byte[] bytes = new byte[name.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) name.charAt(i);
+        }
+        return bytes;
+    }
+}
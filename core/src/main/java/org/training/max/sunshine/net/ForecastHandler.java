@@ -0,0 +1,24 @@
+package org.training.max.sunshine.net;
+
+/**
+ * Receives the decoded parts of the forecast in the order they appear in the response.
+ * OWM usually sends the city before the list, but that is not guaranteed.
+ */
+public interface ForecastHandler {
+
+    /**
+     * Called once the "city" object has been decoded.
+     *
+     * @param cityName human-readable city name, e.g "Mountain View"
+     * @param lat      the latitude of the city
+     * @param lon      the longitude of the city
+     */
+    void onCity(String cityName, double lat, double lon);
+
+    /**
+     * Called for every element of the "list" array.
+     *
+     * @param day decoded day. The instance is reused for the next row, so copy what you need.
+     */
+    void onDay(DayForecast day);
+}
@@ -0,0 +1,274 @@
+package org.training.max.sunshine.sync;
+
+import org.training.max.sunshine.util.DayMath;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Forecast of one location as it is handed from stage to stage of the app's ForecastPipeline.
+ * <p>
+ * Days are stored by column in parallel primitive arrays, and descriptions, of which a forecast
+ * has only a few distinct ones, in a small dictionary. A batch therefore costs a fixed number
+ * of arrays however many days it holds, instead of a boxed object per value. Stages fill and
+ * read the same batch in place.
+ */
+public class ForecastBatch {
+
+    // OWM returns at most 16 days, so the columns rarely need to grow.
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String mLocationSetting;
+    private final ForecastTimings mTimings = new ForecastTimings();
+
+    private String mCityName;
+    private double mLat;
+    private double mLon;
+    private long mLocationId = -1;
+    private long mFetchedAt;
+
+    private int mSize;
+
+    // Columns of the days, by position of the day.
+    private long[] mDates = new long[INITIAL_CAPACITY];
+    private int[] mWeatherIds = new int[INITIAL_CAPACITY];
+    private int[] mDescriptionIndices = new int[INITIAL_CAPACITY];
+    private float[] mHighs = new float[INITIAL_CAPACITY];
+    private float[] mLows = new float[INITIAL_CAPACITY];
+    private float[] mPressures = new float[INITIAL_CAPACITY];
+    private float[] mHumidities = new float[INITIAL_CAPACITY];
+    private float[] mWindSpeeds = new float[INITIAL_CAPACITY];
+    private float[] mWindDirections = new float[INITIAL_CAPACITY];
+    private boolean[] mChanged = new boolean[INITIAL_CAPACITY];
+
+    // Distinct descriptions, referred to by mDescriptionIndices.
+    private String[] mDescriptions = new String[4];
+    private int mDescriptionCount;
+
+    /**
+     * @param locationSetting The location string used to request updates from the server.
+     */
+    public ForecastBatch(String locationSetting) {
+        mLocationSetting = locationSetting;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * @return time spent in every stage for this batch
+     */
+    public ForecastTimings getTimings() {
+        return mTimings;
+    }
+
+    /**
+     * @return 'true' once the decoder found the city of the forecast
+     */
+    public boolean hasCity() {
+        return mCityName != null;
+    }
+
+    public void setCity(String cityName, double lat, double lon) {
+        mCityName = cityName;
+        mLat = lat;
+        mLon = lon;
+    }
+
+    public String getCityName() {
+        return mCityName;
+    }
+
+    public double getLat() {
+        return mLat;
+    }
+
+    public double getLon() {
+        return mLon;
+    }
+
+    /**
+     * @return row ID of the location, -1 until the batch is normalized
+     */
+    public long getLocationId() {
+        return mLocationId;
+    }
+
+    public void setLocationId(long locationId) {
+        mLocationId = locationId;
+    }
+
+    /**
+     * @return time in milliseconds when OWM served the forecast, 0 if it isn't known
+     */
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    public void setFetchedAt(long fetchedAt) {
+        mFetchedAt = fetchedAt;
+    }
+
+    /**
+     * Add the next day, the first day is the current day. Its date is set by normalization.
+     *
+     * @return position of the day
+     */
+    public int addDay(int weatherId, String description, float high, float low, float pressure,
+                      float humidity, float windSpeed, float windDirection) {
+        if (mSize == mDates.length) {
+            grow(mSize * 2);
+        }
+        int index = mSize++;
+        mWeatherIds[index] = weatherId;
+        mDescriptionIndices[index] = descriptionIndex(description);
+        mHighs[index] = high;
+        mLows[index] = low;
+        mPressures[index] = pressure;
+        mHumidities[index] = humidity;
+        mWindSpeeds[index] = windSpeed;
+        mWindDirections[index] = windDirection;
+        mChanged[index] = false;
+        return index;
+    }
+
+    /**
+     * @return count of days in the batch
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public void setDate(int index, long date) {
+        mDates[checkIndex(index)] = date;
+    }
+
+    /**
+     * Date the days, the first one with the day of the given time and every next one with
+     * the next day. Dates are the start of the day in the time zone.
+     *
+     * @param now      time at which the forecast was current, i.e. when it was fetched
+     * @param timeZone time zone of the user
+     */
+    public void setDatesFrom(long now, TimeZone timeZone) {
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, but the first day is always the day it was fetched on, so the days are
+        // dated from that day on.
+        long today = DayMath.getDay(now, timeZone);
+        for (int i = 0; i < mSize; i++) {
+            mDates[i] = DayMath.getDayStart(today + i, timeZone);
+        }
+    }
+
+    /**
+     * @return date of the day, 0 until the batch is normalized
+     */
+    public long getDate(int index) {
+        return mDates[checkIndex(index)];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[checkIndex(index)];
+    }
+
+    public String getDescription(int index) {
+        return mDescriptions[mDescriptionIndices[checkIndex(index)]];
+    }
+
+    public float getHigh(int index) {
+        return mHighs[checkIndex(index)];
+    }
+
+    public float getLow(int index) {
+        return mLows[checkIndex(index)];
+    }
+
+    public float getPressure(int index) {
+        return mPressures[checkIndex(index)];
+    }
+
+    public float getHumidity(int index) {
+        return mHumidities[checkIndex(index)];
+    }
+
+    public float getWindSpeed(int index) {
+        return mWindSpeeds[checkIndex(index)];
+    }
+
+    public float getWindDirection(int index) {
+        return mWindDirections[checkIndex(index)];
+    }
+
+    /**
+     * @return 'true' if the day was new or differed from the stored one when persisted
+     */
+    public boolean isChanged(int index) {
+        return mChanged[checkIndex(index)];
+    }
+
+    public void setChanged(int index, boolean changed) {
+        mChanged[checkIndex(index)] = changed;
+    }
+
+    /**
+     * @return count of days which were new or differed from the stored ones when persisted
+     */
+    public int getChangedDays() {
+        int changedDays = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (mChanged[i]) {
+                changedDays++;
+            }
+        }
+        return changedDays;
+    }
+
+    /**
+     * @return dates of the days which were new or differed from the stored ones when persisted,
+     * empty if the store didn't change
+     */
+    public long[] getChangedDates() {
+        long[] changedDates = new long[getChangedDays()];
+        for (int i = 0, j = 0; i < mSize; i++) {
+            if (mChanged[i]) {
+                changedDates[j++] = mDates[i];
+            }
+        }
+        return changedDates;
+    }
+
+    private int descriptionIndex(String description) {
+        // There are only a handful of distinct descriptions, a scan beats hashing.
+        for (int i = 0; i < mDescriptionCount; i++) {
+            if (mDescriptions[i].equals(description)) {
+                return i;
+            }
+        }
+        if (mDescriptionCount == mDescriptions.length) {
+            mDescriptions = Arrays.copyOf(mDescriptions, mDescriptionCount * 2);
+        }
+        mDescriptions[mDescriptionCount] = description;
+        return mDescriptionCount++;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Day " + index + " of " + mSize);
+        }
+        return index;
+    }
+
+    private void grow(int capacity) {
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mDescriptionIndices = Arrays.copyOf(mDescriptionIndices, capacity);
+        mHighs = Arrays.copyOf(mHighs, capacity);
+        mLows = Arrays.copyOf(mLows, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mWindDirections = Arrays.copyOf(mWindDirections, capacity);
+        mChanged = Arrays.copyOf(mChanged, capacity);
+    }
+}
@@ -0,0 +1,44 @@
+package org.training.max.sunshine.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in every stage of the path of a forecast from the network to the screen.
+ */
+public final class ForecastTimings {
+    public long downloadNanos;
+    public long decodeNanos;
+    public long normalizeNanos;
+    public long persistNanos;
+    public long projectNanos;
+
+    // Count of rows the persist stage bound and executed its statements for, every day of
+    // the batch, whether it changed or not.
+    public int persistedRows;
+
+    // Count of those rows which changed the store.
+    public int changedRows;
+
+    /**
+     * @return rows bound and executed per second by the persist stage, 0 if there were none
+     */
+    public long getPersistRowsPerSecond() {
+        if (persistedRows <= 0 || persistNanos <= 0) {
+            return 0;
+        }
+        return persistedRows * TimeUnit.SECONDS.toNanos(1) / persistNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "download " + millis(downloadNanos) + " ms, decode " + millis(decodeNanos)
+                + " ms, normalize " + millis(normalizeNanos) + " ms, persist "
+                + millis(persistNanos) + " ms (" + persistedRows + " rows, "
+                + getPersistRowsPerSecond() + " rows/s, " + changedRows + " changed), project "
+                + millis(projectNanos) + " ms";
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,57 @@
+package org.training.max.sunshine.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The descriptions of the OWM weather conditions, held once in memory.
+ * <p>
+ * A description is fully determined by the weather id of its condition, and OWM has only a few
+ * dozen of them, all below 1000. The decoded days and the rows read from the store share the
+ * description of their condition, rather than every day holding a copy of it.
+ */
+public final class ConditionDictionary {
+
+    // OWM weather ids are three digits.
+    private static final int MAX_WEATHER_ID = 999;
+
+    private static final AtomicReferenceArray<String> DESCRIPTIONS =
+            new AtomicReferenceArray<>(MAX_WEATHER_ID + 1);
+
+    /**
+     * We can't instantiate the utility class.
+     */
+    private ConditionDictionary() {
+        // This constructor is intentionally empty. It is utility class which shouldn't be instantiated.
+    }
+
+    /**
+     * @param weatherId OWM weather id of the condition
+     * @return description of the condition, 'null' if it isn't known yet
+     */
+    public static String get(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return null;
+        }
+        return DESCRIPTIONS.get(weatherId);
+    }
+
+    /**
+     * Get the shared instance of a description. The description of a condition replaces the
+     * known one if OWM changed it.
+     *
+     * @param weatherId   OWM weather id of the condition
+     * @param description description of the condition
+     * @return equal description which is shared by all days of the condition
+     */
+    public static String intern(int weatherId, String description) {
+        if (description == null || weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return description;
+        }
+        String known = DESCRIPTIONS.get(weatherId);
+        if (description.equals(known)) {
+            return known;
+        }
+        DESCRIPTIONS.set(weatherId, description);
+        return description;
+    }
+}
@@ -0,0 +1,115 @@
+package org.training.max.sunshine.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats forecast dates into day labels like "Mon, Jun 3".
+ * <p>
+ * Labels of a window of days around today are formatted once per locale and time zone and kept
+ * in a table indexed by day, so formatting a row is an array lookup: no formatter, no
+ * {@link java.util.Date} and no String are created for it. The table is rebuilt when a date
+ * falls outside the window, when the default locale changes, or after {@link #invalidate()},
+ * which the app calls when the time zone or locale of the device changes.
+ */
+public final class DayLabelFormatter {
+
+    private static final String PATTERN = "E, MMM d";
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // Days before today in the window, for rows which are a little stale.
+    private static final int DAYS_BEFORE_TODAY = 2;
+
+    // A few more days than the longest forecast OWM returns.
+    private static final int WINDOW_DAY_COUNT = 32;
+
+    private static final DayLabelFormatter sInstance = new DayLabelFormatter();
+
+    /**
+     * Labels of consecutive days, together with what they were formatted for.
+     * It is immutable, so readers never see one half built.
+     */
+    private static final class LabelTable {
+        final Locale locale;
+        final TimeZone timeZone;
+        final long firstDay;
+        final String[] labels;
+
+        LabelTable(Locale locale, TimeZone timeZone, long firstDay, String[] labels) {
+            this.locale = locale;
+            this.timeZone = timeZone;
+            this.firstDay = firstDay;
+            this.labels = labels;
+        }
+    }
+
+    private volatile LabelTable mTable;
+
+    /**
+     * @return the formatter shared by the app
+     */
+    public static DayLabelFormatter getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Drop the labels, e.g. because the time zone or locale of the device changed.
+     * They are formatted again on the next use.
+     */
+    public void invalidate() {
+        mTable = null;
+    }
+
+    /**
+     * @param time date of the day in milliseconds, any time within the day in the default
+     *             time zone
+     * @return label of the day in the default locale, e.g. "Mon, Jun 3"
+     */
+    public String format(long time) {
+        LabelTable table = mTable;
+        // The default locale is a plain read, unlike the default time zone which is a copy.
+        if (table == null || !table.locale.equals(Locale.getDefault())) {
+            TimeZone timeZone = TimeZone.getDefault();
+            long today = localDay(System.currentTimeMillis(), timeZone);
+            table = buildTable(Locale.getDefault(), timeZone, today - DAYS_BEFORE_TODAY);
+        }
+
+        long day = localDay(time, table.timeZone);
+        long index = day - table.firstDay;
+        if (index < 0 || index >= table.labels.length) {
+            // Move the window to the day, it is rare and the next rows follow it.
+            table = buildTable(table.locale, table.timeZone, day - DAYS_BEFORE_TODAY);
+            index = day - table.firstDay;
+        }
+        return table.labels[(int) index];
+    }
+
+    private LabelTable buildTable(Locale locale, TimeZone timeZone, long firstDay) {
+        // Days are counted from the epoch in local time, so a label only depends on the day:
+        // format the day as a UTC midnight.
+        SimpleDateFormat format = new SimpleDateFormat(PATTERN, locale);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String[] labels = new String[WINDOW_DAY_COUNT];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = format.format((firstDay + i) * DAY_MILLIS);
+        }
+
+        LabelTable table = new LabelTable(locale, timeZone, firstDay, labels);
+        mTable = table;
+        return table;
+    }
+
+    /**
+     * @return count of days from the epoch to the day of the time in the time zone
+     */
+    private static long localDay(long time, TimeZone timeZone) {
+        long localTime = time + timeZone.getOffset(time);
+        // Floor division, times before the epoch belong to negative days.
+        long day = localTime / DAY_MILLIS;
+        return localTime < 0 && localTime % DAY_MILLIS != 0 ? day - 1 : day;
+    }
+}
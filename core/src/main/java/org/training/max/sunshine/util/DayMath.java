@@ -0,0 +1,65 @@
+package org.training.max.sunshine.util;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Day arithmetic on plain millis and {@link TimeZone}s, with the results of
+ * {@code android.text.format.Time} but without creating an object per call.
+ * <p>
+ * Days are numbered from the epoch in the given time zone, so consecutive days have
+ * consecutive numbers whatever the DST changes between them.
+ */
+public final class DayMath {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * We can't instantiate the utility class.
+     */
+    private DayMath() {
+        // This constructor is intentionally empty. It is utility class which shouldn't be instantiated.
+    }
+
+    /**
+     * @param millis   any time of the day
+     * @param timeZone time zone the day is taken in
+     * @return number of the day of the time, as Time.getJulianDay but counted from the epoch
+     */
+    public static long getDay(long millis, TimeZone timeZone) {
+        // Like Time.getJulianDay, the day count isn't floored for times before the epoch.
+        return (millis + timeZone.getOffset(millis)) / DAY_MILLIS;
+    }
+
+    /**
+     * @param day      number of the day, see {@link #getDay(long, TimeZone)}
+     * @param timeZone time zone the day is taken in
+     * @return start of the day, as Time.setJulianDay
+     */
+    public static long getDayStart(long day, TimeZone timeZone) {
+        long midnight = day * DAY_MILLIS;
+
+        // The offset at midnight differs from the one at the time when DST changed in between.
+        int offset = timeZone.getOffset(midnight);
+        long start = midnight - offset;
+        int startOffset = timeZone.getOffset(start);
+        if (startOffset == offset) {
+            return start;
+        }
+        long otherStart = midnight - startOffset;
+        if (timeZone.getOffset(otherStart) == startOffset) {
+            return otherStart;
+        }
+        // DST started at midnight, so the day starts with the change, at 1 AM.
+        return Math.max(start, otherStart);
+    }
+
+    /**
+     * @param millis   any time of the day
+     * @param timeZone time zone the day is taken in
+     * @return start of the day of the time, in the time zone
+     */
+    public static long normalizeDate(long millis, TimeZone timeZone) {
+        return getDayStart(getDay(millis, timeZone), timeZone);
+    }
+}
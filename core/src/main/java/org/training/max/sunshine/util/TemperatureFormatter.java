@@ -0,0 +1,70 @@
+package org.training.max.sunshine.util;
+
+/**
+ * Formats the high and low temperatures of a day, e.g. "21/12 C".
+ * <p>
+ * Temperatures are rounded to whole degrees, and their strings come from a table which covers
+ * every realistic temperature in both Celsius and Fahrenheit, so only the result is created.
+ */
+public final class TemperatureFormatter {
+
+    // Lowest and highest whole degree in the temperature table, in either unit.
+    private static final int MIN_TABLE_DEGREES = -150;
+    private static final int MAX_TABLE_DEGREES = 250;
+
+    private static final String[] DEGREE_STRINGS =
+            new String[MAX_TABLE_DEGREES - MIN_TABLE_DEGREES + 1];
+
+    static {
+        for (int i = 0; i < DEGREE_STRINGS.length; i++) {
+            DEGREE_STRINGS[i] = String.valueOf(MIN_TABLE_DEGREES + i);
+        }
+    }
+
+    /**
+     * We can't instantiate the utility class.
+     */
+    private TemperatureFormatter() {
+        // This constructor is intentionally empty. It is utility class which shouldn't be instantiated.
+    }
+
+    /**
+     * Prepare the weather high/lows for presentation.
+     *
+     * @param high     highest temperature, in Celsius
+     * @param low      lowest temperature, in Celsius
+     * @param imperial 'true' to show the temperatures in Fahrenheit
+     */
+    public static String formatHighLows(double high, double low, boolean imperial) {
+        // Data is fetched in Celsius by default.
+        // If user prefers to see in Fahrenheit, convert the values here.
+        // We do this rather than fetching in Fahrenheit so that the user can
+        // change this option without us having to re-fetch the data once
+        // we start storing the values in a database.
+        String suffix = "C";
+
+        if (imperial) {
+            high = toFahrenheit(high);
+            low = toFahrenheit(low);
+            suffix = "F";
+        }
+
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return degrees(Math.round(high)) + "/" + degrees(Math.round(low)) + " " + suffix;
+    }
+
+    /**
+     * @param celsius temperature in Celsius
+     * @return the temperature in Fahrenheit
+     */
+    public static double toFahrenheit(double celsius) {
+        return (celsius * 1.8) + 32;
+    }
+
+    private static String degrees(long rounded) {
+        if (rounded < MIN_TABLE_DEGREES || rounded > MAX_TABLE_DEGREES) {
+            return String.valueOf(rounded);
+        }
+        return DEGREE_STRINGS[(int) rounded - MIN_TABLE_DEGREES];
+    }
+}
@@ -0,0 +1,78 @@
+package org.training.max.sunshine.net;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestForecastByteDecoder extends TestCase {
+
+    private static final String FORECAST_JSON = "{\"city\":{\"id\":3448439,"
+            + "\"name\":\"S\u00e3o Paulo\",\"coord\":{\"lon\":-46.6361,\"lat\":-23.5475},"
+            + "\"country\":\"BR\"},\"cod\":\"200\",\"message\":0.0123,\"cnt\":2,\"list\":["
+            + "{\"dt\":1370260800,\"temp\":{\"day\":21.5,\"min\":14.25,\"max\":23.0,\"night\":15},"
+            + "\"pressure\":1013.25,\"humidity\":80,\"weather\":[{\"id\":500,\"main\":\"Rain\","
+            + "\"description\":\"light rain\",\"icon\":\"10d\"}],\"speed\":3.1,\"deg\":270,"
+            + "\"rain\":1.5},"
+            + "{\"dt\":1370347200,\"temp\":{\"max\":-2.5E1,\"min\":-30},\"pressure\":990,"
+            + "\"humidity\":45,\"weather\":[{\"main\":\"Caf\\u00e9 \\\"Snow\\\"\",\"id\":601}],"
+            + "\"speed\":0,\"deg\":0}]}";
+
+    /**
+     * Keeps the events as text.
+     */
+    private static class RecordingHandler implements ForecastHandler {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            events.add(cityName + " " + lat + " " + lon);
+        }
+
+        @Override
+        public void onDay(DayForecast day) {
+            events.add(day.index + " " + day.pressure + " " + day.humidity + " " + day.windSpeed
+                    + " " + day.windDirection + " " + day.high + " " + day.low + " "
+                    + day.description + " " + day.weatherId);
+        }
+    }
+
+    public void testDecode() throws IOException {
+        RecordingHandler handler = new RecordingHandler();
+        int dayCount = ForecastByteDecoder.parse(
+                new ByteArrayInputStream(FORECAST_JSON.getBytes("UTF-8")), handler,
+                CancellationToken.NONE);
+
+        assertEquals("Error: wrong count of days", 2, dayCount);
+        List<String> expected = new ArrayList<>();
+        expected.add("S\u00e3o Paulo -23.5475 -46.6361");
+        expected.add("0 1013.25 80 3.1 270.0 23.0 14.25 Rain 500");
+        expected.add("1 990.0 45 0.0 0.0 -25.0 -30.0 Caf\u00e9 \"Snow\" 601");
+        assertEquals("Error: wrong events", expected, handler.events);
+    }
+
+    public void testDayWithoutDescriptionIsRejected() throws IOException {
+        byte[] json = "{\"list\":[{\"temp\":{\"max\":20,\"min\":10}}]}".getBytes("UTF-8");
+        try {
+            ForecastByteDecoder.parse(new ByteArrayInputStream(json), new RecordingHandler(),
+                    CancellationToken.NONE);
+            fail("Error: a day without description should be rejected");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    public void testCancelledTokenStopsDecoding() throws IOException {
+        CancellationToken token = CancellationToken.create();
+        token.cancel();
+        try {
+            ForecastByteDecoder.parse(new ByteArrayInputStream(FORECAST_JSON.getBytes("UTF-8")),
+                    new RecordingHandler(), token);
+            fail("Error: decoding should stop when the token is cancelled");
+        } catch (CancelledException e) {
+            // Expected.
+        }
+    }
+}
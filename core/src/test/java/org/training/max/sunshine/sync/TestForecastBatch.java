@@ -0,0 +1,54 @@
+package org.training.max.sunshine.sync;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+public class TestForecastBatch extends TestCase {
+
+    public void testDatesAreConsecutiveDayStarts() {
+        // The first days of April 2016 cross the end of DST in Sydney.
+        long now = 1459209600000L;  // March 29th, 2016, 00:00 UTC
+        for (String id : new String[]{"UTC", "Europe/Moscow", "Australia/Sydney",
+                "America/Los_Angeles", "Asia/Kolkata"}) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            ForecastBatch batch = new ForecastBatch("94043");
+            for (int i = 0; i < 16; i++) {
+                batch.addDay(800, "Clear", 20, 10, 1013, 50, 2, 90);
+            }
+            batch.setDatesFrom(now, timeZone);
+
+            Calendar day = Calendar.getInstance(timeZone);
+            day.setTimeInMillis(now);
+            day.set(Calendar.HOUR_OF_DAY, 0);
+            day.set(Calendar.MINUTE, 0);
+            day.set(Calendar.SECOND, 0);
+            day.set(Calendar.MILLISECOND, 0);
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals("Error: wrong date of day " + i + " in " + id,
+                        day.getTimeInMillis(), batch.getDate(i));
+                day.add(Calendar.DAY_OF_MONTH, 1);
+            }
+        }
+    }
+
+    public void testChangedDates() {
+        ForecastBatch batch = new ForecastBatch("94043");
+        for (int i = 0; i < 20; i++) {
+            batch.addDay(800, "Clear", 20, 10, 1013, 50, 2, 90);
+        }
+        batch.setDatesFrom(1459209600000L, TimeZone.getTimeZone("UTC"));
+        assertEquals(0, batch.getChangedDates().length);
+
+        batch.setChanged(3, true);
+        batch.setChanged(17, true);
+
+        assertEquals(2, batch.getChangedDays());
+        assertTrue(batch.isChanged(17));
+        assertFalse(batch.isChanged(4));
+        long[] changedDates = batch.getChangedDates();
+        assertEquals(batch.getDate(3), changedDates[0]);
+        assertEquals(batch.getDate(17), changedDates[1]);
+    }
+}
@@ -0,0 +1,28 @@
+package org.training.max.sunshine.util;
+
+import junit.framework.TestCase;
+
+public class TestConditionDictionary extends TestCase {
+
+    public void testDescriptionIsShared() {
+        String first = ConditionDictionary.intern(803, new String("Clouds"));
+        String second = ConditionDictionary.intern(803, new String("Clouds"));
+
+        assertEquals("Clouds", first);
+        assertSame("Error: days of a condition don't share its description", first, second);
+        assertSame(first, ConditionDictionary.get(803));
+    }
+
+    public void testChangedDescriptionReplacesKnownOne() {
+        ConditionDictionary.intern(500, "Rain");
+        assertEquals("Drizzle", ConditionDictionary.intern(500, "Drizzle"));
+        assertEquals("Drizzle", ConditionDictionary.get(500));
+    }
+
+    public void testUnknownWeatherId() {
+        assertNull(ConditionDictionary.get(-1));
+        assertNull(ConditionDictionary.get(1000));
+        assertEquals("Asteroids", ConditionDictionary.intern(1000, "Asteroids"));
+        assertNull(ConditionDictionary.get(1000));
+    }
+}
@@ -0,0 +1,59 @@
+package org.training.max.sunshine.util;
+
+import junit.framework.TestCase;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+public class TestDayLabelFormatter extends TestCase {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private Locale mDefaultLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultLocale = Locale.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mDefaultLocale);
+        DayLabelFormatter.getInstance().invalidate();
+        super.tearDown();
+    }
+
+    public void testMatchesDateFormat() {
+        DayLabelFormatter formatter = DayLabelFormatter.getInstance();
+        SimpleDateFormat format = new SimpleDateFormat("E, MMM d");
+        long now = System.currentTimeMillis();
+
+        // Inside the window, then far outside it in both directions.
+        for (long time : new long[]{now, now + 15 * DAY_MILLIS, now + 400 * DAY_MILLIS,
+                now - 400 * DAY_MILLIS}) {
+            assertEquals("Error: label doesn't match the date format",
+                    format.format(new Date(time)), formatter.format(time));
+        }
+    }
+
+    public void testSameLabelIsReused() {
+        DayLabelFormatter formatter = DayLabelFormatter.getInstance();
+        long now = System.currentTimeMillis();
+        assertSame("Error: label should come from the table",
+                formatter.format(now), formatter.format(now));
+    }
+
+    public void testLocaleChange() {
+        long now = System.currentTimeMillis();
+        Locale.setDefault(Locale.US);
+        DayLabelFormatter.getInstance().format(now);
+
+        Locale.setDefault(Locale.FRANCE);
+        assertEquals("Error: labels weren't formatted again for the new locale",
+                new SimpleDateFormat("E, MMM d", Locale.FRANCE).format(new Date(now)),
+                DayLabelFormatter.getInstance().format(now));
+    }
+}